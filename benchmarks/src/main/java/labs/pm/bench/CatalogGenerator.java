@@ -0,0 +1,96 @@
+package labs.pm.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/**
+ * Writes synthetic productNNN.csv/reviewsNNN.csv data folders for the benchmarks, so they don't depend on
+ * the folders configured in config.properties. Folders are cached in java.io.tmpdir between runs.
+ */
+public final class CatalogGenerator {
+
+    public static final int FIRST_ID = 1;
+
+    private static final String[] COMMENTS = {
+            "Nice hot cup of tea", "Rather weak tea", "Perfect tea", "Yet another review",
+            "Just add some lemon", "Fine cake", "Not too sweet", "Looks nice, tastes great"
+    };
+
+    private CatalogGenerator() {
+    }
+
+    public static Path generate(int products, int reviewsPerProduct) throws IOException {
+        Path folder = Path.of(System.getProperty("java.io.tmpdir"), "labs-pm-bench",
+                products + "x" + reviewsPerProduct);
+        Path complete = folder.resolve(".complete");
+        if (Files.exists(complete)) {
+            return folder;
+        }
+        delete(folder);
+        Files.createDirectories(folder);
+        SplittableRandom random = new SplittableRandom(products);
+        LocalDate today = LocalDate.now();
+        for (int id = FIRST_ID; id < FIRST_ID + products; id++) {
+            String price = (random.nextInt(100, 10_000) / 100) + "." + String.format("%02d", random.nextInt(100));
+            String line = (id % 2 == 0 ? "F," : "D,") + id + ",Product " + id + "," + price + ","
+                    + random.nextInt(6) + "," + today.plusDays(random.nextInt(365));
+            Files.writeString(folder.resolve("product" + id + ".csv"), line + "\n", StandardCharsets.UTF_8);
+            if (reviewsPerProduct > 0) {
+                try (BufferedWriter out = Files.newBufferedWriter(folder.resolve("reviews" + id + ".csv"), StandardCharsets.UTF_8)) {
+                    for (int i = 0; i < reviewsPerProduct; i++) {
+                        out.write(random.nextInt(1, 6) + "," + COMMENTS[random.nextInt(COMMENTS.length)]);
+                        out.newLine();
+                    }
+                }
+            }
+        }
+        Files.createFile(complete);
+        return folder;
+    }
+
+    /**
+     * config.properties overrides pointing a ProductManager at a generated data folder and a scratch folder.
+     */
+    public static Map<String, String> settings(Path dataFolder, Path workFolder) throws IOException {
+        Path reports = Files.createDirectories(workFolder.resolve("reports"));
+        Path temp = Files.createDirectories(workFolder.resolve("temp"));
+        Map<String, String> settings = new HashMap<>();
+        settings.put("data.folder", dataFolder.toString());
+        settings.put("reports.folder", reports.toString());
+        settings.put("temp.folder", temp.toString());
+        settings.put("journal.durability", "off");
+        return settings;
+    }
+
+    public static PrintStream silenceConsole() {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        return console;
+    }
+
+    public static void delete(Path folder) throws IOException {
+        if (Files.exists(folder)) {
+            try (Stream<Path> files = Files.walk(folder)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                    try {
+                        Files.delete(file);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package labs.pm.bench;
+
+import labs.pm.data.Product;
+import labs.pm.data.ProductManager;
+import labs.pm.data.Rating;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Review throughput by thread count, with one lock stripe (the old global lock) against striped locks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ContentionBenchmark {
+
+    @Param({"10000"})
+    public int catalogSize;
+
+    @Param({"1", "16", "64"})
+    public String lockStripes;
+
+    private ProductManager pm;
+    private Path workFolder;
+    private PrintStream console;
+
+    @State(Scope.Thread)
+    public static class Ids {
+
+        private final SplittableRandom random = new SplittableRandom();
+
+        int next(int catalogSize) {
+            return CatalogGenerator.FIRST_ID + random.nextInt(catalogSize);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path dataFolder = CatalogGenerator.generate(catalogSize, 0);
+        workFolder = Files.createTempDirectory("labs-pm-work");
+        Map<String, String> settings = CatalogGenerator.settings(dataFolder, workFolder);
+        settings.put("lock.stripes", lockStripes);
+        pm = ProductManager.newInstance(settings);
+        console = CatalogGenerator.silenceConsole();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(console);
+        pm.close();
+        CatalogGenerator.delete(workFolder);
+    }
+
+    private Product review(Ids ids) {
+        return pm.reviewProduct(ids.next(catalogSize), Rating.FOUR_STAR, "Yet another review");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Product review1Thread(Ids ids) {
+        return review(ids);
+    }
+
+    @Benchmark
+    @Threads(2)
+    public Product review2Threads(Ids ids) {
+        return review(ids);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Product review4Threads(Ids ids) {
+        return review(ids);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Product review8Threads(Ids ids) {
+        return review(ids);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Product review16Threads(Ids ids) {
+        return review(ids);
+    }
+}
@@ -0,0 +1,121 @@
+package labs.pm.bench;
+
+import labs.pm.data.NewProduct;
+import labs.pm.data.NewReview;
+import labs.pm.data.ProductManager;
+import labs.pm.data.Rating;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feed ingestion throughput, items per second: one call per item with batchSize 1, against reviewProducts and
+ * createProducts with the feed split into batches of batchSize.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestionBenchmark {
+
+    private static final int FEED = 10_000;
+    private static final Rating[] RATINGS = Rating.values();
+    private static final BigDecimal PRICE = new BigDecimal("1.99");
+
+    @Param({"10000"})
+    public int catalogSize;
+
+    @Param({"1", "100", "10000"})
+    public int batchSize;
+
+    @Param({"async"})
+    public String journal;
+
+    private ProductManager pm;
+    private Path dataFolder;
+    private Path workFolder;
+    private PrintStream console;
+    private List<NewReview> reviews;
+    private int nextId;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataFolder = Files.createTempDirectory("labs-pm-data");
+        // the journal lives in the data folder, so copy the shared catalog before writing to it
+        try (var files = Files.list(CatalogGenerator.generate(catalogSize, 0))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, dataFolder.resolve(file.getFileName()));
+            }
+        }
+        workFolder = Files.createTempDirectory("labs-pm-work");
+        Map<String, String> settings = CatalogGenerator.settings(dataFolder, workFolder);
+        settings.put("journal.durability", journal);
+        settings.put("journal.compact.interval", "0");
+        pm = ProductManager.newInstance(settings);
+        console = CatalogGenerator.silenceConsole();
+        SplittableRandom random = new SplittableRandom(FEED);
+        reviews = new ArrayList<>(FEED);
+        for (int i = 0; i < FEED; i++) {
+            reviews.add(new NewReview(CatalogGenerator.FIRST_ID + random.nextInt(catalogSize),
+                    RATINGS[random.nextInt(1, RATINGS.length)], "Yet another review"));
+        }
+        nextId = CatalogGenerator.FIRST_ID + catalogSize;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(console);
+        pm.close();
+        CatalogGenerator.delete(workFolder);
+        CatalogGenerator.delete(dataFolder);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FEED)
+    public int reviewFeed() {
+        int results = 0;
+        for (int from = 0; from < FEED; from += batchSize) {
+            if (batchSize == 1) {
+                NewReview review = reviews.get(from);
+                results += pm.reviewProduct(review.getProductId(), review.getRating(), review.getComments()) != null ? 1 : 0;
+            } else {
+                results += pm.reviewProducts(reviews.subList(from, Math.min(FEED, from + batchSize))).size();
+            }
+        }
+        return results;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FEED)
+    public int productFeed() {
+        int results = 0;
+        List<NewProduct> batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < FEED; i++) {
+            int id = nextId++;
+            if (batchSize == 1) {
+                results += pm.createProduct(id, "Product " + id, PRICE, Rating.NOT_RATED) != null ? 1 : 0;
+                continue;
+            }
+            batch.add(NewProduct.drink(id, "Product " + id, PRICE, Rating.NOT_RATED));
+            if (batch.size() == batchSize) {
+                results += pm.createProducts(batch).size();
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            results += pm.createProducts(batch).size();
+        }
+        return results;
+    }
+}
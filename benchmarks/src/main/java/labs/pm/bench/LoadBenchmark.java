@@ -0,0 +1,80 @@
+package labs.pm.bench;
+
+import labs.pm.data.ProductManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold load of a generated data folder and snapshot dump/restore, one shot per iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LoadBenchmark {
+
+    @Param({"1000", "100000"})
+    public int catalogSize;
+
+    @Param({"0", "10"})
+    public int reviewsPerProduct;
+
+    @Param({"1", "4", "0"})
+    public String loadThreads;
+
+    private ProductManager pm;
+    private Path workFolder;
+    private PrintStream console;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path dataFolder = CatalogGenerator.generate(catalogSize, reviewsPerProduct);
+        workFolder = Files.createTempDirectory("labs-pm-work");
+        Map<String, String> settings = CatalogGenerator.settings(dataFolder, workFolder);
+        settings.put("load.threads", loadThreads);
+        pm = ProductManager.newInstance(settings);
+        console = CatalogGenerator.silenceConsole();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(console);
+        pm.close();
+        CatalogGenerator.delete(workFolder);
+    }
+
+    @Benchmark
+    public ProductManager loadAllData() {
+        pm.loadAllData();
+        return pm;
+    }
+
+    @Benchmark
+    public ProductManager dumpData() {
+        pm.dumpData();
+        return pm;
+    }
+
+    @State(Scope.Benchmark)
+    public static class Dumped {
+
+        @Setup(Level.Invocation)
+        public void dump(LoadBenchmark benchmark) {
+            benchmark.pm.dumpData();
+        }
+    }
+
+    @Benchmark
+    public ProductManager restoreData(Dumped dumped) {
+        pm.restoreData();
+        return pm;
+    }
+}
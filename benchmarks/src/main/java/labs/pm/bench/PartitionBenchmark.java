@@ -0,0 +1,92 @@
+package labs.pm.bench;
+
+import labs.pm.data.PartitionedProductManager;
+import labs.pm.data.Product;
+import labs.pm.data.ProductQuery;
+import labs.pm.data.Rating;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput by partition count: reviews routed to one shard from 8 threads, and listings and discount
+ * totals gathered from every shard.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PartitionBenchmark {
+
+    private static final Comparator<Product> RATING_THEN_PRICE =
+            Comparator.comparing(Product::getRating).reversed().thenComparing(Product::getPrice);
+
+    @Param({"10000"})
+    public int catalogSize;
+
+    @Param({"1", "2", "4", "8"})
+    public String partitions;
+
+    private PartitionedProductManager pm;
+    private Path workFolder;
+    private PrintStream console;
+
+    @State(Scope.Thread)
+    public static class Ids {
+
+        private final SplittableRandom random = new SplittableRandom();
+
+        int next(int catalogSize) {
+            return CatalogGenerator.FIRST_ID + random.nextInt(catalogSize);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path dataFolder = CatalogGenerator.generate(catalogSize, 0);
+        workFolder = Files.createTempDirectory("labs-pm-work");
+        Map<String, String> settings = CatalogGenerator.settings(dataFolder, workFolder);
+        settings.put("partition.count", partitions);
+        settings.put("jmx.enabled", "false");
+        pm = PartitionedProductManager.newInstance(settings);
+        console = CatalogGenerator.silenceConsole();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(console);
+        pm.close();
+        CatalogGenerator.delete(workFolder);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Product review8Threads(Ids ids) {
+        return pm.reviewProduct(ids.next(catalogSize), Rating.FOUR_STAR, "Yet another review");
+    }
+
+    @Benchmark
+    public List<Product> findProducts() {
+        return pm.findProducts(ProductQuery.orderByDescending(ProductQuery.Order.PRICE).limit(100));
+    }
+
+    @Benchmark
+    public void printProducts() {
+        pm.printProducts(p -> p.getPrice().floatValue() > 1, RATING_THEN_PRICE, "en-GB");
+    }
+
+    @Benchmark
+    public Map<String, String> getDiscounts() {
+        return pm.getDiscounts("en-GB");
+    }
+}
@@ -0,0 +1,139 @@
+package labs.pm.bench;
+
+import labs.pm.data.Product;
+import labs.pm.data.ProductManager;
+import labs.pm.data.ProductManagerException;
+import labs.pm.data.ProductQuery;
+import labs.pm.data.Rating;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ProductManager hot paths by catalog size and reviews per product, single threaded and contended.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ProductManagerBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int catalogSize;
+
+    @Param({"0", "10"})
+    public int reviewsPerProduct;
+
+    @Param({"objects"})
+    public String productStore;
+
+    private ProductManager pm;
+    private Path workFolder;
+    private PrintStream console;
+
+    private static final Comparator<Product> RATING_THEN_PRICE = Comparator.<Product>comparingInt(p -> p.getRating().ordinal())
+            .thenComparing((p1, p2) -> p2.getPrice().compareTo(p1.getPrice()));
+
+    @State(Scope.Thread)
+    public static class Ids {
+
+        private final SplittableRandom random = new SplittableRandom();
+
+        int next(int catalogSize) {
+            return CatalogGenerator.FIRST_ID + random.nextInt(catalogSize);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path dataFolder = CatalogGenerator.generate(catalogSize, reviewsPerProduct);
+        workFolder = Files.createTempDirectory("labs-pm-work");
+        Map<String, String> settings = CatalogGenerator.settings(dataFolder, workFolder);
+        settings.put("product.store", productStore);
+        pm = ProductManager.newInstance(settings);
+        console = CatalogGenerator.silenceConsole();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(console);
+        pm.close();
+        CatalogGenerator.delete(workFolder);
+    }
+
+    @Benchmark
+    public Product findProduct(Ids ids) throws ProductManagerException {
+        return pm.findProduct(ids.next(catalogSize));
+    }
+
+    @Benchmark
+    public Product reviewProduct(Ids ids) {
+        return pm.reviewProduct(ids.next(catalogSize), Rating.FOUR_STAR, "Yet another review");
+    }
+
+    @Benchmark
+    public Map<String, String> getDiscounts() {
+        return pm.getDiscounts("en-GB");
+    }
+
+    @Benchmark
+    public void printProducts() {
+        pm.printProducts(p -> p.getPrice().floatValue() > 1, RATING_THEN_PRICE, "en-GB");
+    }
+
+    @Benchmark
+    public List<Product> findProductsTop20() {
+        return pm.findProducts(ProductQuery.orderByDescending(ProductQuery.Order.RATING)
+                .priceBetween(BigDecimal.valueOf(10), BigDecimal.valueOf(50))
+                .limit(20));
+    }
+
+    @Benchmark
+    public List<Product> findProductsTop20NarrowPrice() {
+        return pm.findProducts(ProductQuery.orderByDescending(ProductQuery.Order.RATING)
+                .priceBetween(new BigDecimal("42.00"), new BigDecimal("42.20"))
+                .limit(20));
+    }
+
+    @Benchmark
+    public void printProductReport(Ids ids) {
+        pm.printProductReport(ids.next(catalogSize), "en-GB", "bench");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Product reviewProductContended(Ids ids) {
+        return pm.reviewProduct(ids.next(catalogSize), Rating.FOUR_STAR, "Yet another review");
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Product findProductContended(Ids ids) throws ProductManagerException {
+        return pm.findProduct(ids.next(catalogSize));
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(3)
+    public Map<String, String> readWriteDiscounts() {
+        return pm.getDiscounts("en-GB");
+    }
+
+    @Benchmark
+    @Group("readWrite")
+    @GroupThreads(1)
+    public Product readWriteReview(Ids ids) {
+        return pm.reviewProduct(ids.next(catalogSize), Rating.TWO_STAR, "Rather weak tea");
+    }
+}
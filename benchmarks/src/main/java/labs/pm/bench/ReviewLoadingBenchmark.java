@@ -0,0 +1,76 @@
+package labs.pm.bench;
+
+import labs.pm.data.ProductManager;
+import labs.pm.data.ProductManagerException;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Eager against lazy review loading: a cold load of the catalog, one shot per iteration, and reading the
+ * reviews of a random product, which with lazy loading parses the product's reviews file on a cache miss.
+ */
+@State(Scope.Benchmark)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ReviewLoadingBenchmark {
+
+    @Param({"100000"})
+    public int catalogSize;
+
+    @Param({"10"})
+    public int reviewsPerProduct;
+
+    @Param({"eager", "lazy"})
+    public String loading;
+
+    @Param({"67108864"})
+    public String cacheBytes;
+
+    private ProductManager pm;
+    private Path workFolder;
+    private PrintStream console;
+    private final SplittableRandom random = new SplittableRandom();
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path dataFolder = CatalogGenerator.generate(catalogSize, reviewsPerProduct);
+        workFolder = Files.createTempDirectory("labs-pm-work");
+        Map<String, String> settings = CatalogGenerator.settings(dataFolder, workFolder);
+        settings.put("review.loading", loading);
+        settings.put("review.cache.bytes", cacheBytes);
+        pm = ProductManager.newInstance(settings);
+        console = CatalogGenerator.silenceConsole();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(console);
+        pm.close();
+        CatalogGenerator.delete(workFolder);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public ProductManager loadAllData() {
+        pm.loadAllData();
+        return pm;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    public List<?> getReviews() throws ProductManagerException {
+        return pm.snapshot().getReviews(CatalogGenerator.FIRST_ID + random.nextInt(catalogSize));
+    }
+}
@@ -0,0 +1,92 @@
+package labs.pm.bench;
+
+import labs.pm.data.CatalogSnapshot;
+import labs.pm.data.Product;
+import labs.pm.data.ProductManager;
+import labs.pm.data.Rating;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reader/writer mixes by thread count. Readers list the whole catalog and its discounts through one snapshot,
+ * which used to hold every stripe's read lock; writers review a random product.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SnapshotReadBenchmark {
+
+    private static final Comparator<Product> BY_RATING = Comparator.comparing(Product::getRating).reversed();
+
+    @Param({"1000"})
+    public int catalogSize;
+
+    @Param({"0", "10", "50"})
+    public int writePercent;
+
+    private ProductManager pm;
+    private Path workFolder;
+    private PrintStream console;
+
+    @State(Scope.Thread)
+    public static class Ids {
+
+        private final SplittableRandom random = new SplittableRandom();
+
+        int next(int catalogSize) {
+            return CatalogGenerator.FIRST_ID + random.nextInt(catalogSize);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Path dataFolder = CatalogGenerator.generate(catalogSize, 10);
+        workFolder = Files.createTempDirectory("labs-pm-work");
+        pm = ProductManager.newInstance(CatalogGenerator.settings(dataFolder, workFolder));
+        console = CatalogGenerator.silenceConsole();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(console);
+        pm.close();
+        CatalogGenerator.delete(workFolder);
+    }
+
+    private Object operation(Ids ids) {
+        if (ids.random.nextInt(100) < writePercent) {
+            return pm.reviewProduct(ids.next(catalogSize), Rating.FOUR_STAR, "Yet another review");
+        }
+        CatalogSnapshot snapshot = pm.snapshot();
+        snapshot.printProducts(product -> true, BY_RATING, "en-GB");
+        return snapshot.getDiscounts("en-GB");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Object mixed1Thread(Ids ids) {
+        return operation(ids);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Object mixed4Threads(Ids ids) {
+        return operation(ids);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Object mixed16Threads(Ids ids) {
+        return operation(ids);
+    }
+}
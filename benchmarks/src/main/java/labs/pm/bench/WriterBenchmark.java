@@ -0,0 +1,113 @@
+package labs.pm.bench;
+
+import labs.pm.data.Product;
+import labs.pm.data.ProductManager;
+import labs.pm.data.Rating;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Review throughput with mutations applied by the single catalog writer against applying them on the
+ * calling thread under the stripe lock, blocking one review at a time and pipelined through the async API.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriterBenchmark {
+
+    private static final int PIPELINE = 64;
+
+    @Param({"10000"})
+    public int catalogSize;
+
+    @Param({"direct", "loop"})
+    public String writer;
+
+    @Param({"async"})
+    public String journal;
+
+    private ProductManager pm;
+    private Path dataFolder;
+    private Path workFolder;
+    private PrintStream console;
+
+    @State(Scope.Thread)
+    public static class Ids {
+
+        private final SplittableRandom random = new SplittableRandom();
+
+        int next(int catalogSize) {
+            return CatalogGenerator.FIRST_ID + random.nextInt(catalogSize);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dataFolder = Files.createTempDirectory("labs-pm-data");
+        // the journal lives in the data folder, so copy the shared catalog before writing to it
+        try (var files = Files.list(CatalogGenerator.generate(catalogSize, 0))) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, dataFolder.resolve(file.getFileName()));
+            }
+        }
+        workFolder = Files.createTempDirectory("labs-pm-work");
+        Map<String, String> settings = CatalogGenerator.settings(dataFolder, workFolder);
+        settings.put("catalog.writer", writer);
+        settings.put("journal.durability", journal);
+        settings.put("journal.compact.interval", "0");
+        pm = ProductManager.newInstance(settings);
+        console = CatalogGenerator.silenceConsole();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        System.setOut(console);
+        pm.close();
+        CatalogGenerator.delete(workFolder);
+        CatalogGenerator.delete(dataFolder);
+    }
+
+    private Product review(Ids ids) {
+        return pm.reviewProduct(ids.next(catalogSize), Rating.FOUR_STAR, "Yet another review");
+    }
+
+    @Benchmark
+    @Threads(1)
+    public Product review1Thread(Ids ids) {
+        return review(ids);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Product review4Threads(Ids ids) {
+        return review(ids);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public Product review16Threads(Ids ids) {
+        return review(ids);
+    }
+
+    @Benchmark
+    @Threads(4)
+    @OperationsPerInvocation(PIPELINE)
+    public Object reviewPipelined4Threads(Ids ids) {
+        CompletableFuture<?>[] reviews = new CompletableFuture<?>[PIPELINE];
+        for (int i = 0; i < PIPELINE; i++) {
+            reviews[i] = pm.reviewProductAsync(ids.next(catalogSize), Rating.FOUR_STAR, "Yet another review");
+        }
+        return CompletableFuture.allOf(reviews).join();
+    }
+}
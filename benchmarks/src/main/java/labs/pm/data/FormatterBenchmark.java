@@ -0,0 +1,97 @@
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.text.MessageFormat;
+import java.text.NumberFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Formatting 1M product lines into a Writer: MessageFormat re-parsing the pattern per line with a NumberFormat
+ * per locale, as ProductManager used to, against the compiled ResourceFormatter appending to the Writer.
+ * Scores are lines per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FormatterBenchmark {
+
+    private static final int LINES = 1_000_000;
+
+    @Param({"en-GB", "pt-BR"})
+    public String languageTag;
+
+    private Product[] products;
+    private ResourceBundle resources;
+    private DateTimeFormatter dateFormat;
+    private NumberFormat moneyFormat;
+    private ResourceFormatter formatter;
+
+    @State(Scope.Thread)
+    public static class Output {
+
+        private final Writer out = new BufferedWriter(Writer.nullWriter(), 1 << 16);
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        SplittableRandom random = new SplittableRandom(LINES);
+        Rating[] ratings = Rating.values();
+        LocalDate today = LocalDate.now();
+        products = new Product[LINES];
+        for (int id = 0; id < LINES; id++) {
+            BigDecimal price = BigDecimal.valueOf(random.nextInt(100, 1_000_000), 2);
+            products[id] = id % 2 == 0
+                    ? new Food(id, "Product " + id, price, ratings[random.nextInt(6)], today.plusDays(random.nextInt(365)))
+                    : new Drink(id, "Product " + id, price, ratings[random.nextInt(6)]);
+        }
+        Locale locale = Locale.forLanguageTag(languageTag);
+        resources = ResourceBundle.getBundle("labs.pm.data.resources", locale);
+        dateFormat = DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT).localizedBy(locale);
+        moneyFormat = NumberFormat.getCurrencyInstance(locale);
+        formatter = ResourceFormatter.of(languageTag);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void messageFormat(Output output) throws IOException {
+        for (Product product : products) {
+            output.out.write(MessageFormat.format(resources.getString("product"),
+                    product.getName(),
+                    moneyFormat.format(product.getPrice()),
+                    product.getRating().getStars(),
+                    dateFormat.format(product.getBestBefore())));
+            output.out.write('\n');
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public void compiled(Output output) throws IOException {
+        for (Product product : products) {
+            formatter.formatProduct(product, output.out).append('\n');
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    @Threads(4)
+    public void compiled4Threads(Output output) throws IOException {
+        for (Product product : products) {
+            formatter.formatProduct(product, output.out).append('\n');
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.text.MessageFormat;
+import java.text.ParseException;
+import java.time.LocalDate;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RecordParser against the MessageFormat parsing it replaced, per CSV record.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    private static final String FOOD = "F,103,Cake,3.99,0,2026-11-21";
+    private static final String DRINK = "D,101,Tea,1.99,0,";
+    private static final String REVIEW = "4,Nice hot cup of tea";
+
+    private final RecordParser parser = new RecordParser();
+    private final MessageFormat productFormat = new MessageFormat("{0},{1},{2},{3},{4},{5}");
+    private final MessageFormat reviewFormat = new MessageFormat("{0},{1}");
+
+    @Benchmark
+    public Product recordParserFood() throws RecordParseException {
+        return parser.parseProduct(FOOD);
+    }
+
+    @Benchmark
+    public Product recordParserDrink() throws RecordParseException {
+        return parser.parseProduct(DRINK);
+    }
+
+    @Benchmark
+    public Review recordParserReview() throws RecordParseException {
+        return parser.parseReview(REVIEW);
+    }
+
+    @Benchmark
+    public Product messageFormatFood() throws ParseException {
+        return parseProduct(FOOD);
+    }
+
+    @Benchmark
+    public Product messageFormatDrink() throws ParseException {
+        return parseProduct(DRINK);
+    }
+
+    @Benchmark
+    public Review messageFormatReview() throws ParseException {
+        Object[] values = reviewFormat.parse(REVIEW);
+        return new Review(Rateable.convert(Integer.parseInt((String) values[0])), (String) values[1]);
+    }
+
+    private Product parseProduct(String text) throws ParseException {
+        Object[] values = productFormat.parse(text);
+        int id = Integer.parseInt((String) values[1]);
+        String name = (String) values[2];
+        BigDecimal price = BigDecimal.valueOf(Double.parseDouble((String) values[3]));
+        Rating rating = Rateable.convert(Integer.parseInt((String) values[4]));
+        if (values[0].equals("F")) {
+            return new Food(id, name, price, rating, LocalDate.parse((String) values[5]));
+        }
+        return new Drink(id, name, price, rating);
+    }
+}
@@ -0,0 +1,65 @@
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of reading products back from each store: point lookups and a full scan.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ProductStoreBenchmark {
+
+    @Param({"1000000"})
+    public int catalogSize;
+
+    @Param({"objects", "columns"})
+    public String store;
+
+    private ProductStore products;
+
+    @State(Scope.Thread)
+    public static class Ids {
+
+        private final SplittableRandom random = new SplittableRandom();
+
+        int next(int catalogSize) {
+            return 1 + random.nextInt(catalogSize);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        products = ProductStore.of(store);
+        SplittableRandom random = new SplittableRandom(catalogSize);
+        Rating[] ratings = Rating.values();
+        LocalDate today = LocalDate.now();
+        for (int id = 1; id <= catalogSize; id++) {
+            BigDecimal price = BigDecimal.valueOf(random.nextInt(100, 10_000), 2);
+            products.put(id % 2 == 0
+                    ? new Food(id, "Product " + id, price, ratings[random.nextInt(6)], today.plusDays(random.nextInt(365)))
+                    : new Drink(id, "Product " + id, price, ratings[random.nextInt(6)]));
+        }
+    }
+
+    @Benchmark
+    public Product get(Ids ids) {
+        return products.get(ids.next(catalogSize));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(1000000)
+    public BigDecimal scanPrices() {
+        BigDecimal[] total = {BigDecimal.ZERO};
+        products.forEach(product -> total[0] = total[0].add(product.getPrice()));
+        return total[0];
+    }
+}
@@ -0,0 +1,85 @@
+package labs.pm.data;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Retained memory per review of review lists against review arenas with heap and off-heap comment dictionaries,
+ * measured as used heap plus direct buffer memory after full GCs. Most comments repeat one of a thousand phrases,
+ * as loaded from files each is a separate String.
+ * <pre>
+ * java -Xmx8g -cp benchmarks/target/benchmarks.jar labs.pm.data.ReviewFootprint [products] [reviewsPerProduct]
+ * </pre>
+ */
+public class ReviewFootprint {
+
+    private static final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private static final String[] PHRASES = new String[1000];
+
+    static {
+        for (int i = 0; i < PHRASES.length; i++) {
+            PHRASES[i] = "Review phrase number " + i + ", would buy again";
+        }
+    }
+
+    public static void main(String[] args) {
+        int products = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int reviewsPerProduct = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        Object retained;
+        for (String layout : new String[]{"lists", "heap", "offheap"}) {
+            retained = null;
+            long before = usedMemory();
+            retained = fill(layout, products, reviewsPerProduct);
+            long bytes = usedMemory() - before;
+            long reviews = (long) products * reviewsPerProduct;
+            System.out.println(String.format(Locale.ROOT, "%-8s %,14d reviews %,16d bytes %8.1f bytes/review",
+                    layout, reviews, bytes, (double) bytes / reviews));
+            retained.hashCode();
+        }
+    }
+
+    private static Object fill(String layout, int products, int reviewsPerProduct) {
+        SplittableRandom random = new SplittableRandom(products);
+        Rating[] ratings = Rating.values();
+        CommentDictionary dictionary = layout.equals("lists") ? null : CommentDictionary.of(layout);
+        IntMap<List<Review>> lists = new IntMap<>();
+        IntMap<ReviewArena> arenas = new IntMap<>();
+        for (int id = 1; id <= products; id++) {
+            List<Review> reviews = new ArrayList<>();
+            ReviewArena arena = ReviewArena.EMPTY;
+            for (int i = 0; i < reviewsPerProduct; i++) {
+                Rating rating = ratings[random.nextInt(1, 6)];
+                String comments = random.nextInt(5) == 0
+                        ? "Review " + i + " of product " + id
+                        : new String(PHRASES[random.nextInt(PHRASES.length)]);
+                if (dictionary == null) {
+                    reviews.add(new Review(rating, comments));
+                } else {
+                    arena = arena.with(rating, dictionary.encode(comments));
+                }
+            }
+            if (dictionary == null) {
+                lists.put(id, reviews);
+            } else {
+                arenas.put(id, arena);
+            }
+        }
+        return dictionary == null ? lists : List.of(arenas, dictionary);
+    }
+
+    private static long usedMemory() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        long direct = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                .filter(pool -> pool.getName().equals("direct"))
+                .mapToLong(BufferPoolMXBean::getMemoryUsed)
+                .sum();
+        return memory.getHeapMemoryUsage().getUsed() + direct;
+    }
+}
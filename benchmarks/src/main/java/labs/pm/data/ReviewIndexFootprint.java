@@ -0,0 +1,45 @@
+package labs.pm.data;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Locale;
+
+/**
+ * Retained memory of a ReviewIndex over the ReviewSearchBenchmark corpus, measured as used heap after full GCs,
+ * next to the review arenas and comment dictionary it indexes. A brute-force scan needs no memory beyond those.
+ * <pre>
+ * java -Xmx4g -cp benchmarks/target/benchmarks.jar labs.pm.data.ReviewIndexFootprint [products] [reviewsPerProduct]
+ * </pre>
+ */
+public class ReviewIndexFootprint {
+
+    private static final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    public static void main(String[] args) {
+        int products = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int reviewsPerProduct = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        long before = usedMemory();
+        ReviewSearchBenchmark.Corpus corpus = ReviewSearchBenchmark.corpus(products, reviewsPerProduct);
+        long reviews = usedMemory() - before;
+        long start = System.nanoTime();
+        ReviewIndex index = ReviewSearchBenchmark.index(corpus);
+        long elapsed = System.nanoTime() - start;
+        long indexed = usedMemory() - before - reviews;
+        System.out.println(String.format(Locale.ROOT, "%-8s %,14d reviews %,16d bytes %8.1f bytes/review",
+                "reviews", corpus.reviews, reviews, (double) reviews / corpus.reviews));
+        System.out.println(String.format(Locale.ROOT, "%-8s %,14d reviews %,16d bytes %8.1f bytes/review",
+                "index", corpus.reviews, indexed, (double) indexed / corpus.reviews));
+        System.out.println(String.format(Locale.ROOT,
+                "%,d terms, %,d postings, %,d posting list bytes (%.2f bytes/posting), built in %,d ms",
+                index.getTermCount(), index.getPostingCount(), index.getBytes(),
+                (double) index.getBytes() / index.getPostingCount(), elapsed / 1_000_000));
+        corpus.hashCode();
+    }
+
+    private static long usedMemory() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,141 @@
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Review search latency at 10M reviews: the inverted ReviewIndex against scanning every review, decoding
+ * its comments and matching the query words as lower case substrings, which is cheaper than tokenising
+ * them. Comments are 100k distinct phrases of 3 to 8 words from a 2000 word vocabulary with a Zipf-like
+ * skew; "tea" is the most frequent word, "lemon" is mid-frequency and "word1500" is rare.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ReviewSearchBenchmark {
+
+    private static final int VOCABULARY = 2000;
+    private static final int PHRASES = 100_000;
+    private static final String[] WORDS = {"tea", "cake", "nice", "hot", "weak", "great", "sweet", "fresh", "cup",
+            "perfect", "taste", "strong", "bitter", "cold", "again", "would", "buy", "not", "too", "just", "lemon"};
+
+    @Param({"1000000"})
+    public int products;
+
+    @Param({"10"})
+    public int reviewsPerProduct;
+
+    @Param({"tea", "lemon", "word1500", "weak lemon"})
+    public String query;
+
+    private Corpus corpus;
+    private ReviewIndex index;
+    private String[] queryWords;
+
+    /**
+     * Review arenas of products 1 to n and their comment dictionary.
+     */
+    static class Corpus {
+
+        final IntMap<ReviewArena> arenas;
+        final CommentDictionary dictionary;
+        final int products;
+        final long reviews;
+
+        private Corpus(IntMap<ReviewArena> arenas, CommentDictionary dictionary, int products, long reviews) {
+            this.arenas = arenas;
+            this.dictionary = dictionary;
+            this.products = products;
+            this.reviews = reviews;
+        }
+    }
+
+    static Corpus corpus(int products, int reviewsPerProduct) {
+        SplittableRandom random = new SplittableRandom(products);
+        String[] phrases = new String[PHRASES];
+        for (int i = 0; i < phrases.length; i++) {
+            StringBuilder phrase = new StringBuilder();
+            for (int words = random.nextInt(3, 9); words > 0; words--) {
+                // log-uniform ranks, so word frequency falls off roughly as 1 / rank
+                int rank = (int) Math.pow(VOCABULARY, random.nextDouble()) - 1;
+                phrase.append(phrase.length() == 0 ? "" : " ").append(rank < WORDS.length ? WORDS[rank] : "word" + rank);
+            }
+            phrases[i] = phrase.toString();
+        }
+        Rating[] ratings = Rating.values();
+        CommentDictionary dictionary = CommentDictionary.of("heap");
+        IntMap<ReviewArena> arenas = new IntMap<>(products);
+        List<Review> reviews = new ArrayList<>(reviewsPerProduct);
+        for (int id = 1; id <= products; id++) {
+            reviews.clear();
+            for (int i = 0; i < reviewsPerProduct; i++) {
+                reviews.add(new Review(ratings[random.nextInt(1, 6)], phrases[random.nextInt(PHRASES)]));
+            }
+            reviews.sort(null);
+            arenas.put(id, ReviewArena.of(reviews, dictionary));
+        }
+        return new Corpus(arenas, dictionary, products, (long) products * reviewsPerProduct);
+    }
+
+    static ReviewIndex index(Corpus corpus) {
+        ReviewIndex index = new ReviewIndex(corpus.dictionary);
+        for (int id = 1; id <= corpus.products; id++) {
+            ReviewArena arena = corpus.arenas.get(id);
+            for (int i = 0; i < arena.size(); i++) {
+                index.add(id, arena.comment(i));
+            }
+        }
+        return index;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        corpus = corpus(products, reviewsPerProduct);
+        index = index(corpus);
+        queryWords = query.toLowerCase(Locale.ROOT).split(" ");
+    }
+
+    @Benchmark
+    public int index() {
+        IntMap<int[]> hits = new IntMap<>();
+        index.search(query, (id, found) -> {
+            int[] count = hits.get(id);
+            if (count == null) {
+                hits.put(id, new int[]{found});
+            } else {
+                count[0] += found;
+            }
+        });
+        return hits.size();
+    }
+
+    @Benchmark
+    public int scan() {
+        IntMap<int[]> hits = new IntMap<>();
+        for (int id = 1; id <= corpus.products; id++) {
+            ReviewArena arena = corpus.arenas.get(id);
+            for (int i = 0; i < arena.size(); i++) {
+                String comments = corpus.dictionary.decode(arena.comment(i)).toLowerCase(Locale.ROOT);
+                for (String word : queryWords) {
+                    if (comments.contains(word)) {
+                        int[] count = hits.get(id);
+                        if (count == null) {
+                            hits.put(id, new int[]{1});
+                        } else {
+                            count[0]++;
+                        }
+                    }
+                }
+            }
+        }
+        return hits.size();
+    }
+}
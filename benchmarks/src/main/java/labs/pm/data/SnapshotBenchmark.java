@@ -0,0 +1,110 @@
+package labs.pm.data;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SnapshotCodec against Java serialization of the same catalog, dump and restore.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class SnapshotBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int catalogSize;
+
+    @Param({"10"})
+    public int reviewsPerProduct;
+
+    private Map<Product, List<Review>> products;
+    private Path folder;
+    private Path snapshot;
+    private Path serialized;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        products = new HashMap<>();
+        SplittableRandom random = new SplittableRandom(catalogSize);
+        Rating[] ratings = Rating.values();
+        LocalDate today = LocalDate.now();
+        for (int id = 1; id <= catalogSize; id++) {
+            BigDecimal price = BigDecimal.valueOf(random.nextInt(100, 10_000), 2);
+            Product product = id % 2 == 0
+                    ? new Food(id, "Product " + id, price, ratings[random.nextInt(6)], today.plusDays(random.nextInt(365)))
+                    : new Drink(id, "Product " + id, price, ratings[random.nextInt(6)]);
+            List<Review> reviews = new ArrayList<>(reviewsPerProduct);
+            for (int i = 0; i < reviewsPerProduct; i++) {
+                reviews.add(new Review(ratings[random.nextInt(1, 6)], "Review " + i + " of product " + id));
+            }
+            products.put(product, reviews);
+        }
+        folder = Files.createTempDirectory("labs-pm-snapshot");
+        snapshot = folder.resolve("catalog.snapshot");
+        serialized = folder.resolve("catalog.ser");
+        SnapshotCodec.write(snapshot, products);
+        writeSerialized(serialized);
+        System.out.println("snapshot " + Files.size(snapshot) + " bytes, serialized " + Files.size(serialized) + " bytes");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (Path file : List.of(snapshot, serialized, folder.resolve("write.snapshot"), folder.resolve("write.ser"), folder)) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void deleteWritten() throws IOException {
+        Files.deleteIfExists(folder.resolve("write.snapshot"));
+        Files.deleteIfExists(folder.resolve("write.ser"));
+    }
+
+    @Benchmark
+    public Path writeSnapshot() throws IOException {
+        Path file = folder.resolve("write.snapshot");
+        SnapshotCodec.write(file, products);
+        return file;
+    }
+
+    @Benchmark
+    public Path writeSerialized() throws IOException {
+        return writeSerialized(folder.resolve("write.ser"));
+    }
+
+    @Benchmark
+    public Map<Product, List<Review>> readSnapshot() throws IOException, ClassNotFoundException {
+        return SnapshotCodec.read(snapshot);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Map<Product, List<Review>> readSerialized() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(Files.newInputStream(serialized))) {
+            return (Map<Product, List<Review>>) in.readObject();
+        }
+    }
+
+    private Path writeSerialized(Path file) throws IOException {
+        try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(file))) {
+            out.writeObject(products);
+        }
+        return file;
+    }
+}
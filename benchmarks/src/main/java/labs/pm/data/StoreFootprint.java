@@ -0,0 +1,53 @@
+package labs.pm.data;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Retained heap of the object and columnar product stores, measured as used heap after full GCs.
+ * <pre>
+ * java -Xmx8g -cp benchmarks/target/benchmarks.jar labs.pm.data.StoreFootprint [sizes...]
+ * </pre>
+ */
+public class StoreFootprint {
+
+    private static final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    public static void main(String[] args) {
+        String[] sizes = args.length == 0 ? new String[]{"1000000", "10000000"} : args;
+        for (String size : sizes) {
+            for (String type : new String[]{"objects", "columns"}) {
+                int products = Integer.parseInt(size);
+                long before = usedHeap();
+                ProductStore store = fill(ProductStore.of(type), products);
+                long retained = usedHeap() - before;
+                System.out.println(String.format(Locale.ROOT, "%-8s %,12d products %,16d bytes %8.1f bytes/product",
+                        type, store.size(), retained, (double) retained / store.size()));
+            }
+        }
+    }
+
+    private static ProductStore fill(ProductStore store, int products) {
+        SplittableRandom random = new SplittableRandom(products);
+        Rating[] ratings = Rating.values();
+        LocalDate today = LocalDate.now();
+        for (int id = 1; id <= products; id++) {
+            BigDecimal price = BigDecimal.valueOf(random.nextInt(100, 10_000), 2);
+            store.put(id % 2 == 0
+                    ? new Food(id, "Product " + id, price, ratings[random.nextInt(6)], today.plusDays(random.nextInt(365)))
+                    : new Drink(id, "Product " + id, price, ratings[random.nextInt(6)]));
+        }
+        return store;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
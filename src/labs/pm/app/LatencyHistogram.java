@@ -0,0 +1,50 @@
+package labs.pm.app;
+
+import labs.pm.data.LogLinearBuckets;
+
+/**
+ * Log-linear histogram of nanosecond latencies: 32 linear sub-buckets per power of two, so a reported
+ * percentile is within about 3% of the recorded value. Not thread-safe, record per client and merge.
+ */
+class LatencyHistogram {
+
+    private static final LogLinearBuckets BUCKETS = new LogLinearBuckets(5);
+
+    private final long[] counts = new long[BUCKETS.size()];
+    private long count;
+    private long total;
+    private long max;
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        counts[BUCKETS.indexOf(value)]++;
+        count++;
+        total += value;
+        max = Math.max(max, value);
+    }
+
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    long getMax() {
+        return max;
+    }
+
+    long getMean() {
+        return count == 0 ? 0 : total / count;
+    }
+
+    long getPercentile(double percentile) {
+        return BUCKETS.percentile(counts, count, percentile, max);
+    }
+}
@@ -0,0 +1,332 @@
+package labs.pm.app;
+
+import labs.pm.data.Product;
+import labs.pm.data.ProductManager;
+import labs.pm.data.Rating;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Drives a ProductManager with a configurable mix of Shop client operations and writes per-operation
+ * throughput and latency percentiles as JSON.
+ * <pre>
+ * java -m labs.pm/labs.pm.app.LoadDriver --clients=16 --threads=4 --duration=30 --warmup=5
+ *      --mix=discounts:40,review:30,report:20,list:10 --keys=zipf --skew=0.99
+ *      --products=1000 --reviews=3 --output=summary.json [--lock.stripes=1 ...]
+ * </pre>
+ * Options with a dot in the name override config.properties keys. Clients take turns on the thread pool,
+ * so with more clients than threads latency includes the time a client waited for a thread.
+ */
+public class LoadDriver {
+
+    private static final Logger logger = Logger.getLogger(LoadDriver.class.getName());
+
+    private static final String[] COMMENTS = {"Nice hot cup of tea", "Rather weak tea", "Perfect tea",
+            "Just add some lemon", "Fine cake", "Not too sweet", "Yet another review"};
+    private static final Rating[] RATINGS = Rating.values();
+
+    enum Operation {
+        DISCOUNTS, REVIEW, REPORT, LIST
+    }
+
+    private final Map<String, String> options;
+    private final int clients;
+    private final int threads;
+    private final long durationNanos;
+    private final long warmupNanos;
+    private final int products;
+    private final int reviews;
+    private final Operation[] mix;
+    private final double[] zipfCdf;
+    private final String[] languageTags = ProductManager.getSupportedLocales().toArray(new String[0]);
+
+    private ProductManager pm;
+    private volatile long measureFrom;
+    private volatile long measureUntil;
+
+    private static final Comparator<Product> RATING_THEN_PRICE = Comparator.<Product>comparingInt(p -> p.getRating().ordinal())
+            .thenComparing((p1, p2) -> p2.getPrice().compareTo(p1.getPrice()));
+
+    LoadDriver(Map<String, String> options) {
+        this.options = options;
+        clients = Integer.parseInt(options.getOrDefault("clients", "8"));
+        threads = Integer.parseInt(options.getOrDefault("threads", "4"));
+        durationNanos = Long.parseLong(options.getOrDefault("duration", "30")) * 1_000_000_000L;
+        warmupNanos = Long.parseLong(options.getOrDefault("warmup", "5")) * 1_000_000_000L;
+        products = Integer.parseInt(options.getOrDefault("products", "1000"));
+        reviews = Integer.parseInt(options.getOrDefault("reviews", "3"));
+        mix = parseMix(options.getOrDefault("mix", "discounts:40,review:30,report:20,list:10"));
+        String keys = options.getOrDefault("keys", "uniform");
+        switch (keys) {
+            case "uniform":
+                zipfCdf = null;
+                break;
+            case "zipf":
+                zipfCdf = zipfCdf(products, Double.parseDouble(options.getOrDefault("skew", "0.99")));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown key distribution " + keys);
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, found " + arg);
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        String summary = new LoadDriver(options).run();
+        String output = options.get("output");
+        if (output == null) {
+            System.out.println(summary);
+        } else {
+            Files.writeString(Path.of(output), summary + System.lineSeparator(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static Operation[] parseMix(String text) {
+        List<Operation> mix = new ArrayList<>();
+        for (String entry : text.split(",")) {
+            String[] weight = entry.split(":");
+            Operation operation = Operation.valueOf(weight[0].trim().toUpperCase());
+            int count = weight.length > 1 ? Integer.parseInt(weight[1].trim()) : 1;
+            for (int i = 0; i < count; i++) {
+                mix.add(operation);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("Empty operation mix " + text);
+        }
+        return mix.toArray(new Operation[0]);
+    }
+
+    private static double[] zipfCdf(int size, double skew) {
+        double[] cdf = new double[size];
+        double sum = 0;
+        for (int rank = 0; rank < size; rank++) {
+            sum += 1 / Math.pow(rank + 1, skew);
+            cdf[rank] = sum;
+        }
+        for (int rank = 0; rank < size; rank++) {
+            cdf[rank] /= sum;
+        }
+        return cdf;
+    }
+
+    private int nextProductId(ThreadLocalRandom random) {
+        int rank;
+        if (zipfCdf == null) {
+            rank = random.nextInt(products);
+        } else {
+            rank = Arrays.binarySearch(zipfCdf, random.nextDouble());
+            rank = Math.min(rank < 0 ? -rank - 1 : rank, products - 1);
+        }
+        return 101 + rank;
+    }
+
+    String run() throws IOException, InterruptedException {
+        Path workFolder = Files.createTempDirectory("labs-pm-load");
+        Path dataFolder = Files.createDirectories(workFolder.resolve("data"));
+        generateData(dataFolder);
+        Map<String, String> settings = new HashMap<>();
+        settings.put("data.folder", dataFolder.toString());
+        settings.put("reports.folder", Files.createDirectories(workFolder.resolve("reports")).toString());
+        settings.put("temp.folder", Files.createDirectories(workFolder.resolve("temp")).toString());
+        options.forEach((key, value) -> {
+            if (key.contains(".")) {
+                settings.put(key, value);
+            }
+        });
+
+        PrintStream console = System.out;
+        List<Client> done = new ArrayList<>();
+        try (ProductManager manager = ProductManager.newInstance(settings)) {
+            pm = manager;
+            // reports and product lists echo to the console, keep them out of the summary
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            ExecutorService executorService = Executors.newFixedThreadPool(threads);
+            CountDownLatch finished = new CountDownLatch(clients);
+            measureFrom = System.nanoTime() + warmupNanos;
+            measureUntil = measureFrom + durationNanos;
+            for (int i = 1; i <= clients; i++) {
+                Client client = new Client("Client" + i, executorService, finished);
+                done.add(client);
+                client.schedule();
+            }
+            finished.await();
+            executorService.shutdown();
+        } finally {
+            System.setOut(console);
+            deleteFolder(workFolder);
+        }
+        return summary(done);
+    }
+
+    private void generateData(Path dataFolder) throws IOException {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        LocalDate bestBefore = LocalDate.now().plusDays(30);
+        for (int id = 101; id < 101 + products; id++) {
+            // alternate copies of the demo Tea and Cake
+            String product = id % 2 == 1
+                    ? "D," + id + ",Tea " + id + ",1.99,0," + bestBefore
+                    : "F," + id + ",Cake " + id + ",10.4,0," + bestBefore;
+            Files.writeString(dataFolder.resolve("product" + id + ".csv"), product, StandardCharsets.UTF_8);
+            if (reviews > 0) {
+                try (BufferedWriter out = Files.newBufferedWriter(dataFolder.resolve("reviews" + id + ".csv"), StandardCharsets.UTF_8)) {
+                    for (int i = 0; i < reviews; i++) {
+                        out.write(random.nextInt(1, 6) + "," + COMMENTS[random.nextInt(COMMENTS.length)]);
+                        out.newLine();
+                    }
+                }
+            }
+        }
+    }
+
+    private static void deleteFolder(Path folder) throws IOException {
+        try (Stream<Path> files = Files.walk(folder)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    private class Client implements Runnable {
+
+        private final String clientId;
+        private final ExecutorService executorService;
+        private final CountDownLatch finished;
+        private final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+        private final Map<Operation, Long> errors = new EnumMap<>(Operation.class);
+        private long readyAt;
+
+        private Client(String clientId, ExecutorService executorService, CountDownLatch finished) {
+            this.clientId = clientId;
+            this.executorService = executorService;
+            this.finished = finished;
+            for (Operation operation : Operation.values()) {
+                latencies.put(operation, new LatencyHistogram());
+                errors.put(operation, 0L);
+            }
+        }
+
+        private void schedule() {
+            readyAt = System.nanoTime();
+            executorService.execute(this);
+        }
+
+        @Override
+        public void run() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            Operation operation = mix[random.nextInt(mix.length)];
+            boolean failed = false;
+            try {
+                execute(operation, random);
+            } catch (RuntimeException e) {
+                failed = true;
+                logger.log(Level.WARNING, clientId + " " + operation + " failed " + e.getMessage());
+            }
+            long end = System.nanoTime();
+            if (readyAt >= measureFrom && end <= measureUntil) {
+                latencies.get(operation).record(end - readyAt);
+                if (failed) {
+                    errors.merge(operation, 1L, Long::sum);
+                }
+            }
+            if (end < measureUntil) {
+                schedule();
+            } else {
+                finished.countDown();
+            }
+        }
+
+        private void execute(Operation operation, ThreadLocalRandom random) {
+            String languageTag = languageTags[random.nextInt(languageTags.length)];
+            switch (operation) {
+                case DISCOUNTS:
+                    pm.getDiscounts(languageTag);
+                    break;
+                case REVIEW:
+                    pm.reviewProduct(nextProductId(random), RATINGS[random.nextInt(1, RATINGS.length)],
+                            COMMENTS[random.nextInt(COMMENTS.length)]);
+                    break;
+                case REPORT:
+                    pm.printProductReport(nextProductId(random), languageTag, clientId);
+                    break;
+                case LIST:
+                    pm.printProducts(p -> p.getPrice().floatValue() > 1, RATING_THEN_PRICE, languageTag);
+            }
+        }
+    }
+
+    private String summary(List<Client> done) {
+        double seconds = durationNanos / 1e9;
+        Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+        Map<Operation, Long> errors = new EnumMap<>(Operation.class);
+        LatencyHistogram all = new LatencyHistogram();
+        long allErrors = 0;
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram histogram = new LatencyHistogram();
+            long failed = 0;
+            for (Client client : done) {
+                histogram.add(client.latencies.get(operation));
+                failed += client.errors.get(operation);
+            }
+            latencies.put(operation, histogram);
+            errors.put(operation, failed);
+            all.add(histogram);
+            allErrors += failed;
+        }
+        String config = options.entrySet().stream()
+                .map(option -> quote(option.getKey()) + ": " + quote(option.getValue()))
+                .collect(Collectors.joining(", ", "{", "}"));
+        String operations = Arrays.stream(Operation.values())
+                .filter(operation -> latencies.get(operation).getCount() > 0)
+                .map(operation -> quote(operation.name().toLowerCase()) + ": "
+                        + format(latencies.get(operation), errors.get(operation), seconds))
+                .collect(Collectors.joining(",\n    ", "{\n    ", "\n  }"));
+        return "{\n  \"options\": " + config
+                + ",\n  \"clients\": " + clients
+                + ",\n  \"threads\": " + threads
+                + ",\n  \"products\": " + products
+                + ",\n  \"durationSeconds\": " + seconds
+                + ",\n  \"total\": " + format(all, allErrors, seconds)
+                + ",\n  \"operations\": " + operations
+                + "\n}";
+    }
+
+    private static String format(LatencyHistogram histogram, long errors, double seconds) {
+        return String.format(Locale.ROOT, "{\"count\": %d, \"errors\": %d, \"throughput\": %.1f, "
+                        + "\"meanMicros\": %.1f, \"p50Micros\": %.1f, \"p99Micros\": %.1f, \"p999Micros\": %.1f, \"maxMicros\": %.1f}",
+                histogram.getCount(), errors, histogram.getCount() / seconds,
+                histogram.getMean() / 1e3, histogram.getPercentile(50) / 1e3, histogram.getPercentile(99) / 1e3,
+                histogram.getPercentile(99.9) / 1e3, histogram.getMax() / 1e3);
+    }
+
+    private static String quote(String text) {
+        return '"' + text.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+}
@@ -0,0 +1,40 @@
+package labs.pm.data;
+
+/**
+ * Outcome of one item of a batch: the resulting value, or the error that rejected the item.
+ */
+public class BatchResult<T> {
+
+    private final T value;
+    private final ProductManagerException error;
+
+    private BatchResult(T value, ProductManagerException error) {
+        this.value = value;
+        this.error = error;
+    }
+
+    static <T> BatchResult<T> of(T value) {
+        return new BatchResult<>(value, null);
+    }
+
+    static <T> BatchResult<T> failed(ProductManagerException error) {
+        return new BatchResult<>(null, error);
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public T getValue() {
+        return value;
+    }
+
+    public ProductManagerException getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return error == null ? "BatchResult{value=" + value + '}' : "BatchResult{error=" + error.getMessage() + '}';
+    }
+}
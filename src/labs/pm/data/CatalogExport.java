@@ -0,0 +1,103 @@
+package labs.pm.data;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+
+/**
+ * Streams formatted products and reports through buffers of a fixed size, so an export of any size holds
+ * one buffer of text at a time instead of the whole listing.
+ */
+class CatalogExport {
+
+    static final int BUFFER_SIZE = 1 << 16;
+    static final int PAGE_SIZE = 1024;
+
+    /**
+     * Buffers writes to the caller's writer, which is flushed but left open.
+     */
+    static Writer buffered(Writer out) {
+        return new BufferedWriter(out, BUFFER_SIZE);
+    }
+
+    /**
+     * Encodes UTF-8 text to the caller's channel, which is flushed but left open.
+     */
+    static Writer buffered(WritableByteChannel out) {
+        return new BufferedWriter(Channels.newWriter(out, encoder(), BUFFER_SIZE), BUFFER_SIZE);
+    }
+
+    /**
+     * Appends one line per product; returns the last product written, or null if there were none.
+     */
+    static Product writeProducts(Iterator<Product> products, ResourceFormatter formatter, Writer out) throws IOException {
+        Product last = null;
+        while (products.hasNext()) {
+            last = products.next();
+            formatter.formatProduct(last, out).append('\n');
+        }
+        return last;
+    }
+
+    private static CharsetEncoder encoder() {
+        // like String.getBytes, malformed text is replaced rather than failing the export
+        return StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Writes one report file after another through the same text and byte buffers.
+     */
+    static class ReportFiles {
+
+        private final StringBuilder report = new StringBuilder(BUFFER_SIZE);
+        private final ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CharsetEncoder encoder = encoder();
+
+        /**
+         * The cleared text of the next report.
+         */
+        StringBuilder report() {
+            report.setLength(0);
+            return report;
+        }
+
+        void write(Path file) throws IOException {
+            CharBuffer chars = CharBuffer.wrap(report);
+            encoder.reset();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                CoderResult result;
+                do {
+                    result = encoder.encode(chars, bytes, true);
+                    drain(channel);
+                } while (result.isOverflow());
+                while (encoder.flush(bytes).isOverflow()) {
+                    drain(channel);
+                }
+                drain(channel);
+            }
+        }
+
+        private void drain(FileChannel channel) throws IOException {
+            bytes.flip();
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            bytes.clear();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package labs.pm.data;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.IntPredicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Loads the product and review CSV files of the data folder on a bounded pool of workers.
+ */
+class CatalogLoader {
+
+    private static final Logger logger = Logger.getLogger(CatalogLoader.class.getName());
+
+    private final Path dataFolder;
+    private final int threads;
+    private final ThreadLocal<RecordParser> parser = ThreadLocal.withInitial(RecordParser::new);
+    private final String productPrefix;
+    private final String productSuffix;
+    private final String reviewsPrefix;
+    private final String reviewsSuffix;
+    private final IntPredicate ids;
+
+    private final LongAdder productRows = new LongAdder();
+    private final LongAdder reviewRows = new LongAdder();
+    private final LongAdder rejectedRows = new LongAdder();
+
+    CatalogLoader(Path dataFolder, int threads, String productFilePattern, String reviewsFilePattern) {
+        this(dataFolder, threads, productFilePattern, reviewsFilePattern, id -> true);
+    }
+
+    /**
+     * Loads only the products whose file name ids pass the filter, as for one partition of a shared folder.
+     */
+    CatalogLoader(Path dataFolder, int threads, String productFilePattern, String reviewsFilePattern, IntPredicate ids) {
+        this.dataFolder = dataFolder;
+        this.ids = ids;
+        this.threads = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        // resolve the file name patterns once instead of once per product
+        String[] parts = MessageFormat.format(productFilePattern, "\0").split("\0", -1);
+        productPrefix = parts[0];
+        productSuffix = parts[1];
+        parts = MessageFormat.format(reviewsFilePattern, "\0").split("\0", -1);
+        reviewsPrefix = parts[0];
+        reviewsSuffix = parts[1];
+    }
+
+    Map<Product, List<Review>> load() throws IOException {
+        return load(this::loadReviews);
+    }
+
+    /**
+     * Loads the products with the rating counts of their reviews, reading only the rating of each review.
+     */
+    Map<Product, RatingHistogram> loadRatings() throws IOException {
+        return load(this::loadRatings);
+    }
+
+    private <T> Map<Product, T> load(BiFunction<Product, Set<String>, T> reviewsLoader) throws IOException {
+        long start = System.nanoTime();
+        List<Path> productFiles = new ArrayList<>();
+        Set<String> fileNames = new HashSet<>();
+        try (Stream<Path> files = Files.list(dataFolder)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                fileNames.add(name);
+                if (name.startsWith("product")) {
+                    // a file named without an id is read and its product kept or dropped by the caller
+                    Integer id = productIdOf(name);
+                    if (id == null || ids.test(id)) {
+                        productFiles.add(file);
+                    }
+                }
+            });
+        }
+
+        Map<Product, T> products = new ConcurrentHashMap<>(productFiles.size() * 4 / 3 + 1);
+        ExecutorService workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(threads * 64),
+                task -> {
+                    Thread thread = new Thread(task, "catalog-loader");
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            for (Path file : productFiles) {
+                workers.execute(() -> {
+                    Product product = loadProduct(file);
+                    if (product != null) {
+                        products.put(product, reviewsLoader.apply(product, fileNames));
+                    }
+                });
+            }
+        } finally {
+            workers.shutdown();
+        }
+        try {
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading " + dataFolder, e);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        long rows = productRows.sum() + reviewRows.sum();
+        logger.log(Level.INFO, MessageFormat.format(
+                "Loaded {0} products and {1} reviews from {2} files in {3} ms ({4} rows/s, {5} rejected, {6} threads)",
+                products.size(), reviewRows.sum(), fileNames.size(), elapsed / 1_000_000,
+                elapsed > 0 ? rows * 1_000_000_000L / elapsed : rows, rejectedRows.sum(), threads));
+        return products;
+    }
+
+    /**
+     * The product id in a product or reviews file name, or null for any other file.
+     */
+    Integer productIdOf(String fileName) {
+        String id = null;
+        if (fileName.startsWith(productPrefix) && fileName.endsWith(productSuffix)
+                && fileName.length() > productPrefix.length() + productSuffix.length()) {
+            id = fileName.substring(productPrefix.length(), fileName.length() - productSuffix.length());
+        } else if (fileName.startsWith(reviewsPrefix) && fileName.endsWith(reviewsSuffix)
+                && fileName.length() > reviewsPrefix.length() + reviewsSuffix.length()) {
+            id = fileName.substring(reviewsPrefix.length(), fileName.length() - reviewsSuffix.length());
+        }
+        try {
+            return id == null ? null : Integer.valueOf(id);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    boolean loads(int id) {
+        return ids.test(id);
+    }
+
+    /**
+     * Reads the files of one product again; null if its product file is gone.
+     */
+    Map.Entry<Product, List<Review>> reload(int id) throws IOException {
+        Path file = dataFolder.resolve(productPrefix + id + productSuffix);
+        if (Files.notExists(file)) {
+            return null;
+        }
+        Product product = loadProduct(file);
+        if (product == null || product.getId() != id) {
+            throw new IOException("Unreadable product file " + file.getFileName());
+        }
+        String reviews = reviewsPrefix + id + reviewsSuffix;
+        return Map.entry(product, loadReviews(product,
+                Files.exists(dataFolder.resolve(reviews)) ? Set.of(reviews) : Set.of()));
+    }
+
+    private Product loadProduct(Path file) {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = in.readLine();
+            if (line != null) {
+                productRows.increment();
+                return parser.get().parseProduct(line);
+            }
+        } catch (RecordParseException e) {
+            reject(file, 1, e);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error loading product " + e.getMessage());
+        }
+        return null;
+    }
+
+    private interface ReviewParser {
+        void parse(RecordParser parser, String line) throws RecordParseException;
+    }
+
+    private List<Review> loadReviews(Product product, Set<String> fileNames) {
+        List<Review> reviews = new ArrayList<>();
+        readReviews(product, fileNames, (recordParser, line) -> reviews.add(recordParser.parseReview(line)));
+        return reviews;
+    }
+
+    private RatingHistogram loadRatings(Product product, Set<String> fileNames) {
+        RatingHistogram histogram = new RatingHistogram();
+        readReviews(product, fileNames, (recordParser, line) -> histogram.add(recordParser.parseRating(line)));
+        return histogram;
+    }
+
+    private void readReviews(Product product, Set<String> fileNames, ReviewParser reviewParser) {
+        String name = reviewsPrefix + product.getId() + reviewsSuffix;
+        if (fileNames.contains(name)) {
+            Path file = dataFolder.resolve(name);
+            RecordParser recordParser = parser.get();
+            try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                int lineNumber = 0;
+                while ((line = in.readLine()) != null) {
+                    lineNumber++;
+                    reviewRows.increment();
+                    try {
+                        reviewParser.parse(recordParser, line);
+                    } catch (RecordParseException e) {
+                        reject(file, lineNumber, e);
+                    }
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Error loading reviews " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The first count reviews of a product's reviews file in Review order, skipping the lines rejected
+     * when it was loaded, or fewer if the file has been shortened since.
+     */
+    List<Review> loadReviews(int id, int count) throws IOException {
+        List<Review> reviews = new ArrayList<>(count);
+        Path file = dataFolder.resolve(reviewsPrefix + id + reviewsSuffix);
+        RecordParser recordParser = parser.get();
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while (reviews.size() < count && (line = in.readLine()) != null) {
+                try {
+                    reviews.add(recordParser.parseReview(line));
+                } catch (RecordParseException e) {
+                    // reported by the load
+                }
+            }
+        }
+        Collections.sort(reviews);
+        return reviews;
+    }
+
+    /**
+     * The lines of a product's reviews file up to and including its count-th review, to keep when the
+     * reviews added since are written after them.
+     */
+    List<String> reviewLines(int id, int count) throws IOException {
+        List<String> lines = new ArrayList<>();
+        Path file = dataFolder.resolve(reviewsPrefix + id + reviewsSuffix);
+        RecordParser recordParser = parser.get();
+        int reviews = 0;
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while (reviews < count && (line = in.readLine()) != null) {
+                try {
+                    recordParser.parseRating(line);
+                    lines.add(line);
+                    reviews++;
+                } catch (RecordParseException e) {
+                    // dropped, as when the reviews are rewritten from memory
+                }
+            }
+        }
+        return lines;
+    }
+
+    private void reject(Path file, int line, RecordParseException e) {
+        rejectedRows.increment();
+        logger.log(Level.WARNING, file.getFileName() + ":" + line + " " + e.getMessage());
+    }
+}
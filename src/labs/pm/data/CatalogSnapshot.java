@@ -0,0 +1,248 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * One version of the catalog, as returned by {@link ProductManager#snapshot()}. Reads through a snapshot take no
+ * locks and all see the products, reviews and discounts of that version, however the catalog changes meanwhile.
+ * <p>
+ * A version is the catalog as loaded plus a persistent map of the products created or reviewed since.
+ * Every change publishes a new version that shares everything else with the previous one.
+ */
+public class CatalogSnapshot {
+
+    static class Entry {
+
+        // null if the product has been removed
+        private final Product product;
+        private final ReviewArena reviews;
+        // the version that made the change
+        private final long version;
+
+        private Entry(Product product, ReviewArena reviews, long version) {
+            this.product = product;
+            this.reviews = reviews;
+            this.version = version;
+        }
+    }
+
+    private final ProductManager pm;
+    private final long version;
+    private final long loadedVersion;
+    // as loaded, never modified once published
+    private final ProductStore loadedProducts;
+    private final IntMap<ReviewArena> loadedReviews;
+    private final PersistentIntMap<Entry> changes;
+    private final int size;
+    private final long reviewCount;
+    private final DiscountTotals discounts;
+    private final CommentDictionary comments;
+
+    CatalogSnapshot(ProductManager pm, long version, ProductStore products, IntMap<ReviewArena> reviews,
+                    long reviewCount, DiscountTotals discounts, CommentDictionary comments) {
+        this(pm, version, version, products, reviews, PersistentIntMap.empty(), products.size(), reviewCount,
+                discounts, comments);
+    }
+
+    private CatalogSnapshot(ProductManager pm, long version, long loadedVersion, ProductStore loadedProducts,
+                            IntMap<ReviewArena> loadedReviews, PersistentIntMap<Entry> changes, int size,
+                            long reviewCount, DiscountTotals discounts, CommentDictionary comments) {
+        this.pm = pm;
+        this.version = version;
+        this.loadedVersion = loadedVersion;
+        this.loadedProducts = loadedProducts;
+        this.loadedReviews = loadedReviews;
+        this.changes = changes;
+        this.size = size;
+        this.reviewCount = reviewCount;
+        this.discounts = discounts;
+        this.comments = comments;
+    }
+
+    /**
+     * The next version, with the product and its reviews added or replaced.
+     */
+    CatalogSnapshot with(Product product, ReviewArena reviews) {
+        return with(product, reviews, version + 1);
+    }
+
+    /**
+     * The next version, with every product and its reviews added or replaced and the removed ids gone.
+     */
+    CatalogSnapshot with(List<Product> products, List<ReviewArena> reviews, Collection<Integer> removed) {
+        CatalogSnapshot next = this;
+        for (int i = 0; i < products.size(); i++) {
+            next = next.with(products.get(i), reviews.get(i), version + 1);
+        }
+        for (int id : removed) {
+            next = next.without(id, version + 1);
+        }
+        return next;
+    }
+
+    private CatalogSnapshot without(int id, long nextVersion) {
+        Product previous = product(id);
+        if (previous == null) {
+            return this;
+        }
+        return new CatalogSnapshot(pm, nextVersion, loadedVersion, loadedProducts, loadedReviews,
+                changes.with(id, new Entry(null, null, nextVersion)), size - 1, reviewCount - reviews(id).size(),
+                discounts.with(previous, null), comments);
+    }
+
+    private CatalogSnapshot with(Product product, ReviewArena reviews, long nextVersion) {
+        Product previous = product(product.getId());
+        long added = previous == null ? reviews.size() : reviews.size() - reviews(product.getId()).size();
+        return new CatalogSnapshot(pm, nextVersion, loadedVersion, loadedProducts, loadedReviews,
+                changes.with(product.getId(), new Entry(product, reviews, nextVersion)),
+                previous == null ? size + 1 : size, reviewCount + added,
+                discounts.with(previous, product), comments);
+    }
+
+    Product product(int id) {
+        Entry entry = changes.get(id);
+        return entry != null ? entry.product : loadedProducts.get(id);
+    }
+
+    ReviewArena reviews(int id) {
+        Entry entry = changes.get(id);
+        return entry != null ? entry.reviews : loadedReviews.get(id);
+    }
+
+    boolean contains(int id) {
+        Entry entry = changes.get(id);
+        return entry != null ? entry.product != null : loadedProducts.contains(id);
+    }
+
+    /**
+     * The version that last changed the product, or loaded it. It only goes up, whatever the change, even when
+     * a product is removed and created again or reloaded with fewer reviews.
+     */
+    long versionOf(int id) {
+        Entry entry = changes.get(id);
+        return entry != null ? entry.version : loadedVersion;
+    }
+
+    DiscountTotals discounts() {
+        return discounts;
+    }
+
+    CommentDictionary comments() {
+        return comments;
+    }
+
+    /**
+     * Every product with its reviews, those changed since the load first.
+     */
+    void forEach(BiConsumer<Product, ReviewArena> action) {
+        changes.forEach(entry -> {
+            if (entry.product != null) {
+                action.accept(entry.product, entry.reviews);
+            }
+        });
+        loadedProducts.forEach(product -> {
+            if (changes.get(product.getId()) == null) {
+                action.accept(product, loadedReviews.get(product.getId()));
+            }
+        });
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getTotalReviews() {
+        return reviewCount;
+    }
+
+    public Product findProduct(int id) throws ProductManagerException {
+        Product product = product(id);
+        if (product == null) {
+            throw new ProductManagerException("Product with id " + id + " not found");
+        }
+        return product;
+    }
+
+    public List<Review> getReviews(int id) throws ProductManagerException {
+        findProduct(id);
+        try {
+            return pm.readReviews(this, id, reviews(id), true);
+        } catch (IOException e) {
+            throw new ProductManagerException("Error reading reviews of product " + id + " " + e.getMessage());
+        }
+    }
+
+    public List<Product> getProducts(Predicate<Product> filter, Comparator<Product> sorter) {
+        List<Product> products = new ArrayList<>(size);
+        forEach((product, reviews) -> {
+            if (filter.test(product)) {
+                products.add(product);
+            }
+        });
+        products.sort(sorter);
+        return products;
+    }
+
+    /**
+     * Answers the query by scanning this version, the sorted indexes only follow the latest one.
+     */
+    public List<Product> findProducts(ProductQuery query) {
+        Comparator<Product> order = query.comparator();
+        Product after = query.getAfter();
+        Predicate<Product> filter = product -> query.matches(product)
+                && (query.getOrder() != ProductQuery.Order.BEST_BEFORE || product instanceof Food)
+                && (after == null || order.compare(product, after) > 0);
+        return getProducts(filter, order).stream()
+                .skip(query.getOffset())
+                .limit(query.getLimit())
+                .collect(Collectors.toList());
+    }
+
+    public void printProducts(Predicate<Product> filter, Comparator<Product> sorter, String languageTag) {
+        pm.printProducts(this, filter, sorter, languageTag);
+    }
+
+    public Map<String, String> getDiscounts(String languageTag) {
+        return pm.getDiscounts(this, languageTag);
+    }
+
+    /**
+     * Streams the products the query selects from this version, like
+     * {@link ProductManager#exportProducts(ProductQuery, String, Writer)}.
+     */
+    public Product exportProducts(ProductQuery query, String languageTag, Writer out) throws IOException {
+        return pm.exportProducts(findProducts(query).iterator(), languageTag, CatalogExport.buffered(out));
+    }
+
+    public Product exportProducts(ProductQuery query, String languageTag, WritableByteChannel out) throws IOException {
+        return pm.exportProducts(findProducts(query).iterator(), languageTag, CatalogExport.buffered(out));
+    }
+
+    public int exportProductReports(String languageTag, String client) throws IOException {
+        return pm.exportProductReports(this, languageTag, client);
+    }
+
+    public void printProductReport(int id, String languageTag, String client) {
+        pm.printProductReport(this, id, languageTag, client);
+    }
+
+    public CompletableFuture<Path> printProductReportAsync(int id, String languageTag, String client) {
+        return pm.submitReport(this, id, languageTag, client, false);
+    }
+}
@@ -0,0 +1,214 @@
+package labs.pm.data;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Applies every catalog mutation on one writer thread. Callers queue a mutation and get a future back; the
+ * writer drains the queue in batches and applies a batch one lock stripe at a time, so writers never wait
+ * for each other and a stripe's write lock is taken once per batch, only to keep readers out.
+ * In DIRECT mode mutations run on the calling thread under their stripe's write lock instead.
+ */
+class CatalogWriter {
+
+    private static final Logger logger = Logger.getLogger(CatalogWriter.class.getName());
+
+    private static final int MAX_BATCH = 1024;
+
+    enum Mode {LOOP, DIRECT}
+
+    interface Mutation<T> {
+        CompletableFuture<T> apply() throws ProductManagerException;
+    }
+
+    private static class Task<T> {
+
+        // null for catalog-wide mutations
+        private final ProductSegments.Segment segment;
+        private final Mutation<T> mutation;
+        private final CompletableFuture<T> done = new CompletableFuture<>();
+        private CompletableFuture<T> result;
+
+        private Task(ProductSegments.Segment segment, Mutation<T> mutation) {
+            this.segment = segment;
+            this.mutation = mutation;
+        }
+
+        private void apply() {
+            try {
+                result = mutation.apply();
+            } catch (ProductManagerException | RuntimeException e) {
+                result = CompletableFuture.failedFuture(e);
+            }
+        }
+
+        private void complete() {
+            result.whenComplete((value, error) -> {
+                if (error == null) {
+                    done.complete(value);
+                } else {
+                    done.completeExceptionally(error instanceof CompletionException ? error.getCause() : error);
+                }
+            });
+        }
+    }
+
+    private static final Task<Void> STOP = new Task<>(null, null);
+
+    private final ProductSegments segments;
+    private final Mode mode;
+    private final BlockingQueue<Task<?>> queue = new LinkedBlockingQueue<>();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    private final LongAdder applied = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    CatalogWriter(ProductSegments segments, Mode mode) {
+        this.segments = segments;
+        this.mode = mode;
+        if (mode == Mode.LOOP) {
+            thread = new Thread(this::run, "catalog-writer");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            thread = null;
+        }
+    }
+
+    <T> CompletableFuture<T> submit(int id, Mutation<T> mutation) {
+        return submit(new Task<>(segments.of(id), mutation));
+    }
+
+    <T> CompletableFuture<T> submitAll(Mutation<T> mutation) {
+        return submit(new Task<>(null, mutation));
+    }
+
+    private <T> CompletableFuture<T> submit(Task<T> task) {
+        if (mode == Mode.DIRECT || Thread.currentThread() == thread) {
+            // already on the writer, or no writer at all: apply in place
+            if (task.segment == null) {
+                applyAll(task);
+            } else {
+                Lock writeLock = task.segment.writeLock();
+                try {
+                    writeLock.lock();
+                    task.apply();
+                } finally {
+                    writeLock.unlock();
+                }
+                applied.increment();
+                task.complete();
+            }
+        } else if (closed) {
+            task.done.completeExceptionally(new IllegalStateException("Catalog writer is closed"));
+        } else {
+            queue.add(task);
+            if (closed && queue.remove(task)) {
+                // close() drained the queue between the check and the add, nobody else will run the task
+                task.done.completeExceptionally(new IllegalStateException("Catalog writer is closed"));
+            }
+        }
+        return task.done;
+    }
+
+    private void run() {
+        List<Task<?>> batch = new ArrayList<>();
+        Map<ProductSegments.Segment, List<Task<?>>> stripes = new IdentityHashMap<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                continue;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            batches.increment();
+            boolean stop = false;
+            for (Task<?> task : batch) {
+                if (task == STOP) {
+                    // tasks drained behind it were queued before close() could refuse them, apply them
+                    stop = true;
+                    continue;
+                }
+                if (task.segment == null) {
+                    // catalog-wide mutations keep their place in the queue order
+                    apply(stripes);
+                    applyAll(task);
+                } else {
+                    stripes.computeIfAbsent(task.segment, segment -> new ArrayList<>()).add(task);
+                }
+            }
+            apply(stripes);
+            batch.clear();
+            if (stop) {
+                return;
+            }
+        }
+    }
+
+    private void apply(Map<ProductSegments.Segment, List<Task<?>>> stripes) {
+        stripes.forEach((segment, tasks) -> {
+            Lock writeLock = segment.writeLock();
+            try {
+                writeLock.lock();
+                tasks.forEach(Task::apply);
+            } finally {
+                writeLock.unlock();
+            }
+            applied.add(tasks.size());
+            tasks.forEach(Task::complete);
+        });
+        stripes.clear();
+    }
+
+    private void applyAll(Task<?> task) {
+        try {
+            segments.writeLocks().lockAll();
+            task.apply();
+        } finally {
+            segments.writeLocks().unlockAll();
+        }
+        applied.increment();
+        task.complete();
+    }
+
+    int getQueueDepth() {
+        return queue.size();
+    }
+
+    long getApplied() {
+        return applied.sum();
+    }
+
+    long getBatches() {
+        return batches.sum();
+    }
+
+    void close() {
+        if (thread == null || closed) {
+            return;
+        }
+        closed = true;
+        queue.add(STOP);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            logger.log(Level.WARNING, "Interrupted closing catalog writer");
+            Thread.currentThread().interrupt();
+        }
+        Task<?> task;
+        while ((task = queue.poll()) != null) {
+            task.done.completeExceptionally(new IllegalStateException("Catalog writer is closed"));
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Keeps products as rows of primitive columns: id, unscaled price and scale, rating, type and best before
+ * epoch day, with names UTF-8 encoded into one shared byte arena. get() materialises a new Product from its row.
+ * Rows are found through an open addressing table of row numbers; products are never removed.
+ */
+class ColumnarProductStore implements ProductStore {
+
+    private static final byte FOOD = 'F';
+    private static final byte DRINK = 'D';
+    // marks a price whose unscaled value doesn't fit a long, kept in bigPrices instead
+    private static final byte BIG_PRICE = Byte.MIN_VALUE;
+    private static final Rating[] RATINGS = Rating.values();
+
+    private int size;
+    private int[] ids;
+    private long[] unscaledPrices;
+    private byte[] priceScales;
+    private byte[] ratings;
+    private byte[] types;
+    private int[] bestBefore;
+    private int[] nameOffsets;
+    private int[] nameLengths;
+
+    private byte[] names;
+    private int namesLength;
+
+    // row + 1 per slot, 0 is free
+    private int[] slots;
+
+    private IntMap<BigDecimal> bigPrices;
+
+    ColumnarProductStore() {
+        this(16);
+    }
+
+    ColumnarProductStore(int capacity) {
+        allocate(Math.max(4, capacity));
+        names = new byte[Math.max(64, capacity * 8)];
+        slots = new int[Integer.highestOneBit(Math.max(4, capacity) * 2 - 1) * 2];
+    }
+
+    private void allocate(int capacity) {
+        ids = Arrays.copyOf(ids == null ? new int[0] : ids, capacity);
+        unscaledPrices = Arrays.copyOf(unscaledPrices == null ? new long[0] : unscaledPrices, capacity);
+        priceScales = Arrays.copyOf(priceScales == null ? new byte[0] : priceScales, capacity);
+        ratings = Arrays.copyOf(ratings == null ? new byte[0] : ratings, capacity);
+        types = Arrays.copyOf(types == null ? new byte[0] : types, capacity);
+        bestBefore = Arrays.copyOf(bestBefore == null ? new int[0] : bestBefore, capacity);
+        nameOffsets = Arrays.copyOf(nameOffsets == null ? new int[0] : nameOffsets, capacity);
+        nameLengths = Arrays.copyOf(nameLengths == null ? new int[0] : nameLengths, capacity);
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int row(int id) {
+        int mask = slots.length - 1;
+        for (int i = mix(id) & mask; ; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == 0) {
+                return -1;
+            }
+            if (ids[slot - 1] == id) {
+                return slot - 1;
+            }
+        }
+    }
+
+    @Override
+    public Product get(int id) {
+        int row = row(id);
+        return row < 0 ? null : materialise(row);
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return row(id) >= 0;
+    }
+
+    private Product materialise(int row) {
+        int id = ids[row];
+        String name = new String(names, nameOffsets[row], nameLengths[row], StandardCharsets.UTF_8);
+        BigDecimal price = priceScales[row] == BIG_PRICE
+                ? bigPrices.get(id)
+                : BigDecimal.valueOf(unscaledPrices[row], priceScales[row]);
+        Rating rating = RATINGS[ratings[row]];
+        if (types[row] == FOOD) {
+            return new Food(id, name, price, rating, LocalDate.ofEpochDay(bestBefore[row]));
+        }
+        return new Drink(id, name, price, rating);
+    }
+
+    @Override
+    public void put(Product product) {
+        int id = product.getId();
+        int row = row(id);
+        if (row < 0) {
+            row = size++;
+            if (row == ids.length) {
+                allocate(ids.length + (ids.length >> 1));
+            }
+            ids[row] = id;
+            if (size * 2 > slots.length) {
+                rehash(slots.length * 2);
+            } else {
+                insertSlot(row);
+            }
+            nameLengths[row] = -1;
+        }
+        setName(row, product.getName());
+        setPrice(row, id, product.getPrice());
+        ratings[row] = (byte) product.getRating().ordinal();
+        if (product instanceof Food) {
+            types[row] = FOOD;
+            bestBefore[row] = (int) product.getBestBefore().toEpochDay();
+        } else {
+            types[row] = DRINK;
+            bestBefore[row] = 0;
+        }
+    }
+
+    private void setName(int row, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        int offset = nameOffsets[row];
+        int length = nameLengths[row];
+        if (length == bytes.length && Arrays.equals(names, offset, offset + length, bytes, 0, bytes.length)) {
+            // re-rated products keep their name, don't append it again
+            return;
+        }
+        if (namesLength + bytes.length > names.length) {
+            names = Arrays.copyOf(names, Math.max(namesLength + bytes.length, names.length + (names.length >> 1)));
+        }
+        System.arraycopy(bytes, 0, names, namesLength, bytes.length);
+        nameOffsets[row] = namesLength;
+        nameLengths[row] = bytes.length;
+        namesLength += bytes.length;
+    }
+
+    private void setPrice(int row, int id, BigDecimal price) {
+        BigInteger unscaled = price.unscaledValue();
+        if (unscaled.bitLength() < Long.SIZE && price.scale() > BIG_PRICE && price.scale() <= Byte.MAX_VALUE) {
+            unscaledPrices[row] = unscaled.longValue();
+            priceScales[row] = (byte) price.scale();
+            if (bigPrices != null) {
+                bigPrices.remove(id);
+            }
+        } else {
+            if (bigPrices == null) {
+                bigPrices = new IntMap<>();
+            }
+            bigPrices.put(id, price);
+            priceScales[row] = BIG_PRICE;
+        }
+    }
+
+    private void insertSlot(int row) {
+        int mask = slots.length - 1;
+        int i = mix(ids[row]) & mask;
+        while (slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        slots[i] = row + 1;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        for (int row = 0; row < size; row++) {
+            insertSlot(row);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void forEach(Consumer<? super Product> action) {
+        for (int row = 0; row < size; row++) {
+            action.accept(materialise(row));
+        }
+    }
+}
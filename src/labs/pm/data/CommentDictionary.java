@@ -0,0 +1,149 @@
+package labs.pm.data;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Interns review comments as int codes. Each distinct comment is stored once, UTF-8 encoded, in
+ * append-only chunks that are either heap byte arrays or direct (off-heap) buffers.
+ * encode() is synchronized; decode() takes no lock and relies on the code having been published to the
+ * reader with the catalog snapshot that holds it.
+ */
+class CommentDictionary {
+
+    private static final int CHUNK_SIZE = 1 << 20;
+
+    private final boolean offHeap;
+
+    // only appended to and grown by copying, so any array decode() reads holds the entry behind its code
+    private volatile ByteBuffer[] chunks = new ByteBuffer[0];
+    private volatile long[] locations = new long[64];
+    private volatile int[] lengths = new int[64];
+
+    private ByteBuffer current;
+    private int[] hashes = new int[64];
+    // code + 1 per slot, 0 is free
+    private int[] slots = new int[128];
+    private int size;
+    private long bytes;
+
+    CommentDictionary(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    static CommentDictionary of(String storage) {
+        switch (storage) {
+            case "heap":
+                return new CommentDictionary(false);
+            case "offheap":
+                return new CommentDictionary(true);
+            default:
+                throw new IllegalArgumentException("Unknown review comment storage " + storage);
+        }
+    }
+
+    synchronized int encode(String comments) {
+        byte[] encoded = comments.getBytes(StandardCharsets.UTF_8);
+        int hash = Arrays.hashCode(encoded) * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        int mask = slots.length - 1;
+        int i = hash & mask;
+        for (int slot; (slot = slots[i]) != 0; i = (i + 1) & mask) {
+            if (hashes[slot - 1] == hash && matches(slot - 1, encoded)) {
+                return slot - 1;
+            }
+        }
+        int code = size;
+        long location = append(encoded);
+        if (code == hashes.length) {
+            int capacity = code + (code >> 1);
+            hashes = Arrays.copyOf(hashes, capacity);
+            long[] grownLocations = Arrays.copyOf(locations, capacity);
+            int[] grownLengths = Arrays.copyOf(lengths, capacity);
+            grownLocations[code] = location;
+            grownLengths[code] = encoded.length;
+            lengths = grownLengths;
+            locations = grownLocations;
+        } else {
+            locations[code] = location;
+            lengths[code] = encoded.length;
+        }
+        hashes[code] = hash;
+        size++;
+        if (size * 2 > slots.length) {
+            rehash(slots.length * 2);
+        } else {
+            slots[i] = code + 1;
+        }
+        return code;
+    }
+
+    String decode(int code) {
+        long location = locations[code];
+        int length = lengths[code];
+        ByteBuffer chunk = chunks[(int) (location >>> 32)];
+        int offset = (int) location;
+        if (chunk.hasArray()) {
+            return new String(chunk.array(), chunk.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] encoded = new byte[length];
+        for (int i = 0; i < length; i++) {
+            encoded[i] = chunk.get(offset + i);
+        }
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    private boolean matches(int code, byte[] encoded) {
+        if (lengths[code] != encoded.length) {
+            return false;
+        }
+        long location = locations[code];
+        ByteBuffer chunk = chunks[(int) (location >>> 32)];
+        int offset = (int) location;
+        for (int i = 0; i < encoded.length; i++) {
+            if (chunk.get(offset + i) != encoded[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long append(byte[] encoded) {
+        if (current == null || current.remaining() < encoded.length) {
+            int capacity = Math.max(CHUNK_SIZE, encoded.length);
+            current = offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+            ByteBuffer[] grown = Arrays.copyOf(chunks, chunks.length + 1);
+            grown[grown.length - 1] = current;
+            chunks = grown;
+        }
+        long location = (long) (chunks.length - 1) << 32 | current.position();
+        current.put(encoded);
+        bytes += encoded.length;
+        return location;
+    }
+
+    private void rehash(int capacity) {
+        slots = new int[capacity];
+        int mask = capacity - 1;
+        for (int code = 0; code < size; code++) {
+            int i = hashes[code] & mask;
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = code + 1;
+        }
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized long getBytes() {
+        return bytes;
+    }
+
+    boolean isOffHeap() {
+        return offHeap;
+    }
+}
@@ -0,0 +1,227 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches the data folder and reloads the products whose product or reviews files were created, modified
+ * or deleted. A product is reloaded once its files have been quiet for the debounce interval, so files still
+ * being written are read when complete; the files are parsed on the watcher thread and the changes of one
+ * cycle are published as one catalog version. Files the manager writes itself are not reloaded.
+ */
+class DataWatcher {
+
+    private static final Logger logger = Logger.getLogger(DataWatcher.class.getName());
+
+    private static class Change {
+
+        private final long first;
+        private long last;
+
+        private Change(long time) {
+            first = time;
+            last = time;
+        }
+    }
+
+    private final ProductManager pm;
+    private final Path folder;
+    private final CatalogLoader files;
+    private final long debounceNanos;
+    private final WatchService service;
+    private final Thread thread;
+    private final Map<Integer, Change> pending = new HashMap<>();
+    // modification times of files written by the manager, whose events are its own
+    private final Map<Path, FileTime> written = new ConcurrentHashMap<>();
+
+    private final LongAdder cycles = new LongAdder();
+    private final LongAdder productsTouched = new LongAdder();
+    private final LongAdder lagNanos = new LongAdder();
+    private final AtomicLong lastProductsTouched = new AtomicLong();
+    private final AtomicLong lastLagNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+
+    DataWatcher(ProductManager pm, Path folder, CatalogLoader files, long debounceMillis) throws IOException {
+        this.pm = pm;
+        this.folder = folder;
+        this.files = files;
+        this.debounceNanos = TimeUnit.MILLISECONDS.toNanos(debounceMillis);
+        service = folder.getFileSystem().newWatchService();
+        folder.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                StandardWatchEventKinds.ENTRY_DELETE);
+        thread = new Thread(this::run, "data-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Marks a file about to be moved into the data folder by the manager, so its events are ignored.
+     */
+    void expect(Path file, FileTime modified) {
+        written.put(file, modified);
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key;
+                if (pending.isEmpty()) {
+                    key = service.take();
+                } else {
+                    long wait = nextDue() - System.nanoTime();
+                    key = wait > 0 ? service.poll(wait, TimeUnit.NANOSECONDS) : service.poll();
+                }
+                boolean overflow = false;
+                if (key != null) {
+                    long now = System.nanoTime();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            overflow = true;
+                        } else {
+                            changed((Path) event.context(), now);
+                        }
+                    }
+                    key.reset();
+                }
+                if (overflow) {
+                    reloadAll();
+                } else {
+                    reloadDue();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed
+        }
+    }
+
+    private void changed(Path name, long now) {
+        Integer id = files.productIdOf(name.toString());
+        if (id == null || !files.loads(id)) {
+            return;
+        }
+        Path file = folder.resolve(name);
+        FileTime expected = written.get(file);
+        if (expected != null) {
+            try {
+                if (expected.equals(Files.getLastModifiedTime(file))) {
+                    return;
+                }
+            } catch (IOException e) {
+                // deleted since
+            }
+            written.remove(file, expected);
+        }
+        Change change = pending.get(id);
+        if (change == null) {
+            pending.put(id, new Change(now));
+        } else {
+            change.last = now;
+        }
+    }
+
+    private long nextDue() {
+        long due = Long.MAX_VALUE;
+        for (Change change : pending.values()) {
+            due = Math.min(due, change.last + debounceNanos);
+        }
+        return due;
+    }
+
+    private void reloadDue() {
+        long now = System.nanoTime();
+        Set<Integer> due = new TreeSet<>();
+        long first = now;
+        for (Iterator<Map.Entry<Integer, Change>> i = pending.entrySet().iterator(); i.hasNext(); ) {
+            Map.Entry<Integer, Change> entry = i.next();
+            if (now - entry.getValue().last >= debounceNanos) {
+                due.add(entry.getKey());
+                first = Math.min(first, entry.getValue().first);
+                i.remove();
+            }
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<Product, List<Review>>> reloaded = new ArrayList<>(due.size());
+        Set<Integer> removed = new TreeSet<>();
+        for (int id : due) {
+            try {
+                Map.Entry<Product, List<Review>> product = files.reload(id);
+                if (product == null) {
+                    removed.add(id);
+                } else {
+                    reloaded.add(product);
+                }
+            } catch (IOException e) {
+                // keep the loaded product, a later write to the file triggers another reload
+                logger.log(Level.WARNING, "Error reloading product " + id + " " + e.getMessage());
+            }
+        }
+        int touched = pm.reloadProducts(reloaded, removed);
+        record(first, touched);
+        logger.log(Level.INFO, MessageFormat.format(
+                "Reloaded {0} products ({1} removed) in {2} ms after the first change",
+                touched, removed.size(), lastLagNanos.get() / 1_000_000));
+    }
+
+    private void reloadAll() {
+        long first = System.nanoTime();
+        for (Change change : pending.values()) {
+            first = Math.min(first, change.first);
+        }
+        pending.clear();
+        logger.log(Level.WARNING, "Missed data folder changes, reloading all data");
+        pm.loadAllData();
+        record(first, pm.snapshot().size());
+    }
+
+    private void record(long first, int touched) {
+        long lag = System.nanoTime() - first;
+        cycles.increment();
+        productsTouched.add(touched);
+        lagNanos.add(lag);
+        lastProductsTouched.set(touched);
+        lastLagNanos.set(lag);
+        maxLagNanos.accumulateAndGet(lag, Math::max);
+    }
+
+    void close() {
+        try {
+            service.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error closing data folder watcher " + e.getMessage());
+        }
+        thread.interrupt();
+    }
+
+    Map<String, Long> getStatistics() {
+        long count = cycles.sum();
+        return Map.of("cycles", count,
+                "productsTouched", productsTouched.sum(),
+                "lastProductsTouched", lastProductsTouched.get(),
+                "lastLagMillis", lastLagNanos.get() / 1_000_000,
+                "averageLagMillis", count == 0 ? 0 : lagNanos.sum() / count / 1_000_000,
+                "maxLagMillis", maxLagNanos.get() / 1_000_000);
+    }
+}
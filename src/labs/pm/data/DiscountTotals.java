@@ -0,0 +1,122 @@
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Discount totals per rating, maintained as products are added and re-rated. Food and Drink are kept apart
+ * because Drink discounts only apply during happy hour, which is then a choice between two precomputed totals.
+ * Immutable, with() returns the totals after one change; the formatted totals are cached across them by version.
+ */
+class DiscountTotals {
+
+    private static class Formatted {
+
+        private final long version;
+        private final boolean happyHour;
+        private final Map<String, String> discounts;
+
+        private Formatted(long version, boolean happyHour, Map<String, String> discounts) {
+            this.version = version;
+            this.happyHour = happyHour;
+            this.discounts = discounts;
+        }
+    }
+
+    private static final Rating[] RATINGS = Rating.values();
+
+    private final long[] counts;
+    private final BigDecimal[] foodTotals;
+    private final BigDecimal[] drinkTotals;
+    private final long version;
+
+    private final Map<String, Formatted> formatted;
+
+    DiscountTotals() {
+        counts = new long[RATINGS.length];
+        foodTotals = new BigDecimal[RATINGS.length];
+        drinkTotals = new BigDecimal[RATINGS.length];
+        Arrays.fill(foodTotals, BigDecimal.ZERO);
+        Arrays.fill(drinkTotals, BigDecimal.ZERO);
+        version = 0;
+        formatted = new ConcurrentHashMap<>();
+    }
+
+    private DiscountTotals(DiscountTotals other) {
+        counts = other.counts.clone();
+        foodTotals = other.foodTotals.clone();
+        drinkTotals = other.drinkTotals.clone();
+        version = other.version + 1;
+        formatted = other.formatted;
+    }
+
+    static DiscountTotals of(ProductStore products) {
+        DiscountTotals totals = new DiscountTotals();
+        products.forEach(product -> totals.apply(product, 1));
+        return totals;
+    }
+
+    /**
+     * The totals with previous, if not null, replaced by product, or removed if product is null.
+     */
+    DiscountTotals with(Product previous, Product product) {
+        DiscountTotals totals = new DiscountTotals(this);
+        if (previous != null) {
+            totals.apply(previous, -1);
+        }
+        if (product != null) {
+            totals.apply(product, 1);
+        }
+        return totals;
+    }
+
+    /**
+     * The totals of both, as of the products of two partitions together.
+     */
+    DiscountTotals plus(DiscountTotals other) {
+        // a new instance, the formatted totals cached by version belong to this one
+        DiscountTotals totals = new DiscountTotals();
+        for (int i = 0; i < RATINGS.length; i++) {
+            totals.counts[i] = counts[i] + other.counts[i];
+            totals.foodTotals[i] = foodTotals[i].add(other.foodTotals[i]);
+            totals.drinkTotals[i] = drinkTotals[i].add(other.drinkTotals[i]);
+        }
+        return totals;
+    }
+
+    private void apply(Product product, int sign) {
+        int rating = product.getRating().ordinal();
+        counts[rating] += sign;
+        if (product instanceof Drink) {
+            BigDecimal discount = ((Drink) product).getHappyHourDiscount();
+            drinkTotals[rating] = sign > 0 ? drinkTotals[rating].add(discount) : drinkTotals[rating].subtract(discount);
+        } else {
+            BigDecimal discount = product.getDiscount();
+            foodTotals[rating] = sign > 0 ? foodTotals[rating].add(discount) : foodTotals[rating].subtract(discount);
+        }
+    }
+
+    /**
+     * Formatted totals keyed by rating stars, rebuilt only when the totals or the happy hour state changed.
+     */
+    Map<String, String> format(String languageTag, boolean happyHour, Function<BigDecimal, String> money) {
+        Formatted cached = formatted.get(languageTag);
+        if (cached != null && cached.version == version && cached.happyHour == happyHour) {
+            return cached.discounts;
+        }
+        Map<String, String> discounts = new LinkedHashMap<>();
+        for (int i = 0; i < RATINGS.length; i++) {
+            if (counts[i] > 0) {
+                discounts.put(RATINGS[i].getStars(), money.apply(happyHour ? foodTotals[i].add(drinkTotals[i]) : foodTotals[i]));
+            }
+        }
+        discounts = Collections.unmodifiableMap(discounts);
+        formatted.put(languageTag, new Formatted(version, happyHour, discounts));
+        return discounts;
+    }
+}
@@ -5,16 +5,26 @@ import java.time.LocalTime;
 
 public class Drink extends Product {
 
+    private static final long serialVersionUID = -7820895323314676142L;
+
+    static final LocalTime HAPPY_HOUR_START = LocalTime.of(17, 30);
+    static final LocalTime HAPPY_HOUR_END = LocalTime.of(18, 30);
+
     Drink(int id, String name, BigDecimal price, Rating rating) {
         super(id, name, price, rating);
     }
 
+    static boolean isHappyHour(LocalTime time) {
+        return time.isAfter(HAPPY_HOUR_START) && time.isBefore(HAPPY_HOUR_END);
+    }
+
     @Override
     public BigDecimal getDiscount() {
-        LocalTime now = LocalTime.now();
-        return (now.isAfter(LocalTime.of(17, 30))
-                && now.isBefore(LocalTime.of(18, 30)))
-                ? super.getDiscount() : BigDecimal.ZERO;
+        return isHappyHour(LocalTime.now()) ? getHappyHourDiscount() : BigDecimal.ZERO;
+    }
+
+    BigDecimal getHappyHourDiscount() {
+        return super.getDiscount();
     }
 
     @Override
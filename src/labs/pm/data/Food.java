@@ -5,6 +5,8 @@ import java.time.LocalDate;
 
 public class Food extends Product {
 
+    private static final long serialVersionUID = -7070838027540546921L;
+
     private LocalDate bestBefore;
 
     Food(int id, String name, BigDecimal price, Rating rating, LocalDate bestBefore) {
@@ -0,0 +1,60 @@
+package labs.pm.data;
+
+/**
+ * Log-linear buckets over non-negative longs: a bucket per value below 2^subBits, then 2^subBits linear
+ * sub-buckets per power of two, so a value's bucket upper bound is within 2^-subBits of it.
+ * Used by the operation statistics here and by the latency histograms of the load driver.
+ */
+public final class LogLinearBuckets {
+
+    private final int subBits;
+    private final int subBuckets;
+
+    public LogLinearBuckets(int subBits) {
+        this.subBits = subBits;
+        this.subBuckets = 1 << subBits;
+    }
+
+    /**
+     * The number of buckets, enough for any non-negative long.
+     */
+    public int size() {
+        return (Long.SIZE - subBits) * subBuckets;
+    }
+
+    public int indexOf(long value) {
+        int exponent = 63 - Long.numberOfLeadingZeros(value | 1);
+        if (exponent < subBits) {
+            return (int) value;
+        }
+        int shift = exponent - subBits;
+        return (shift + 1) * subBuckets + (int) (value >>> shift) - subBuckets;
+    }
+
+    public long highestValueAt(int index) {
+        if (index < subBuckets) {
+            return index;
+        }
+        int shift = index / subBuckets - 1;
+        long sub = index % subBuckets + subBuckets;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * The upper bound of the bucket holding the given percentile of the counted values, capped at their max.
+     */
+    public long percentile(long[] counts, long total, double percentile, long max) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueAt(i), max);
+            }
+        }
+        return max;
+    }
+}
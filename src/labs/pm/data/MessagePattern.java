@@ -0,0 +1,73 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A MessageFormat pattern compiled once into literal text and argument indexes, formatted by appending
+ * each piece in turn. Supports plain {n} arguments and MessageFormat quoting; immutable and thread-safe.
+ */
+class MessagePattern {
+
+    /**
+     * Appends argument index of one message.
+     */
+    interface Arguments {
+
+        void append(int index, Appendable out) throws IOException;
+    }
+
+    private final String[] literals;
+    private final int[] arguments;
+
+    private MessagePattern(String[] literals, int[] arguments) {
+        this.literals = literals;
+        this.arguments = arguments;
+    }
+
+    static MessagePattern compile(String pattern) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> arguments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c == '\'') {
+                if (i + 1 < pattern.length() && pattern.charAt(i + 1) == '\'') {
+                    literal.append('\'');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == '{' && !quoted) {
+                int end = pattern.indexOf('}', i);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unmatched braces in pattern " + pattern);
+                }
+                try {
+                    arguments.add(Integer.parseInt(pattern.substring(i + 1, end).trim()));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Unsupported argument in pattern " + pattern);
+                }
+                literals.add(literal.toString());
+                literal.setLength(0);
+                i = end;
+            } else {
+                literal.append(c);
+            }
+        }
+        literals.add(literal.toString());
+        return new MessagePattern(literals.toArray(new String[0]),
+                arguments.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    <A extends Appendable> A format(A out, Arguments values) throws IOException {
+        for (int i = 0; i < arguments.length; i++) {
+            out.append(literals[i]);
+            values.append(arguments[i], out);
+        }
+        out.append(literals[arguments.length]);
+        return out;
+    }
+}
@@ -0,0 +1,103 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/**
+ * Currency format of a locale, taken once from its DecimalFormat and then applied without it, so unlike
+ * NumberFormat it is immutable and safe to share between threads.
+ */
+class MoneyFormat {
+
+    private final String positivePrefix;
+    private final String positiveSuffix;
+    private final String negativePrefix;
+    private final String negativeSuffix;
+    private final char zeroDigit;
+    private final char decimalSeparator;
+    private final char groupingSeparator;
+    private final int groupingSize;
+    private final int minimumIntegerDigits;
+    private final int minimumFractionDigits;
+    private final int maximumFractionDigits;
+    private final boolean decimalSeparatorAlwaysShown;
+    private final RoundingMode roundingMode;
+
+    MoneyFormat(Locale locale) {
+        NumberFormat numberFormat = NumberFormat.getCurrencyInstance(locale);
+        if (!(numberFormat instanceof DecimalFormat)) {
+            throw new IllegalArgumentException("Unsupported currency format for " + locale);
+        }
+        DecimalFormat format = (DecimalFormat) numberFormat;
+        DecimalFormatSymbols symbols = format.getDecimalFormatSymbols();
+        positivePrefix = format.getPositivePrefix();
+        positiveSuffix = format.getPositiveSuffix();
+        negativePrefix = format.getNegativePrefix();
+        negativeSuffix = format.getNegativeSuffix();
+        zeroDigit = symbols.getZeroDigit();
+        decimalSeparator = symbols.getMonetaryDecimalSeparator();
+        groupingSize = format.isGroupingUsed() ? format.getGroupingSize() : 0;
+        groupingSeparator = groupingSize > 0 ? sampleGroupingSeparator(format, symbols) : symbols.getGroupingSeparator();
+        minimumIntegerDigits = format.getMinimumIntegerDigits();
+        minimumFractionDigits = format.getMinimumFractionDigits();
+        maximumFractionDigits = format.getMaximumFractionDigits();
+        decimalSeparatorAlwaysShown = format.isDecimalSeparatorAlwaysShown();
+        roundingMode = format.getRoundingMode();
+    }
+
+    private char sampleGroupingSeparator(DecimalFormat format, DecimalFormatSymbols symbols) {
+        // currency amounts may be grouped with a monetary separator, which has no accessor before Java 15
+        String sample = format.format(BigDecimal.TEN.pow(groupingSize));
+        int one = sample.indexOf(zeroDigit + 1);
+        return one >= 0 && one + 1 < sample.length() ? sample.charAt(one + 1) : symbols.getGroupingSeparator();
+    }
+
+    String format(BigDecimal amount) {
+        try {
+            return format(amount, new StringBuilder(16)).toString();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    <A extends Appendable> A format(BigDecimal amount, A out) throws IOException {
+        BigDecimal rounded = amount.setScale(maximumFractionDigits, roundingMode);
+        // like DecimalFormat, an amount that rounds to zero keeps its sign
+        boolean negative = amount.signum() < 0;
+        // digits of the absolute amount, with maximumFractionDigits after the point
+        String digits = rounded.unscaledValue().abs().toString();
+        int integerDigits = digits.length() - maximumFractionDigits;
+        out.append(negative ? negativePrefix : positivePrefix);
+        int width = Math.max(integerDigits, minimumIntegerDigits);
+        int padding = width - Math.max(integerDigits, 0);
+        for (int i = 0; i < width; i++) {
+            out.append(i < padding ? zeroDigit : digit(digits, i - padding));
+            int remaining = width - i - 1;
+            if (groupingSize > 0 && remaining > 0 && remaining % groupingSize == 0) {
+                out.append(groupingSeparator);
+            }
+        }
+        int fractionDigits = maximumFractionDigits;
+        while (fractionDigits > minimumFractionDigits && digit(digits, integerDigits + fractionDigits - 1) == zeroDigit) {
+            fractionDigits--;
+        }
+        if (fractionDigits > 0 || decimalSeparatorAlwaysShown) {
+            out.append(decimalSeparator);
+        }
+        for (int i = 0; i < fractionDigits; i++) {
+            out.append(digit(digits, integerDigits + i));
+        }
+        out.append(negative ? negativeSuffix : positiveSuffix);
+        return out;
+    }
+
+    private char digit(String digits, int index) {
+        // fraction digits of amounts below one have no leading zeros in the unscaled value
+        return (char) (zeroDigit + (index < 0 ? 0 : digits.charAt(index) - '0'));
+    }
+}
@@ -0,0 +1,32 @@
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * A product to create with {@link ProductManager#createProducts(java.util.Collection)}.
+ */
+public class NewProduct {
+
+    private final Product product;
+
+    private NewProduct(Product product) {
+        this.product = product;
+    }
+
+    public static NewProduct food(int id, String name, BigDecimal price, Rating rating, LocalDate bestBefore) {
+        return new NewProduct(new Food(id, name, price, rating, bestBefore));
+    }
+
+    public static NewProduct drink(int id, String name, BigDecimal price, Rating rating) {
+        return new NewProduct(new Drink(id, name, price, rating));
+    }
+
+    public int getId() {
+        return product.getId();
+    }
+
+    Product getProduct() {
+        return product;
+    }
+}
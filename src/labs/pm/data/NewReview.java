@@ -0,0 +1,29 @@
+package labs.pm.data;
+
+/**
+ * A review to add with {@link ProductManager#reviewProducts(java.util.Collection)}.
+ */
+public class NewReview {
+
+    private final int productId;
+    private final Rating rating;
+    private final String comments;
+
+    public NewReview(int productId, Rating rating, String comments) {
+        this.productId = productId;
+        this.rating = rating;
+        this.comments = comments;
+    }
+
+    public int getProductId() {
+        return productId;
+    }
+
+    public Rating getRating() {
+        return rating;
+    }
+
+    public String getComments() {
+        return comments;
+    }
+}
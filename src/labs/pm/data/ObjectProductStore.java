@@ -0,0 +1,36 @@
+package labs.pm.data;
+
+import java.util.function.Consumer;
+
+/**
+ * Keeps the Product instances themselves.
+ */
+class ObjectProductStore implements ProductStore {
+
+    private final IntMap<Product> products = new IntMap<>();
+
+    @Override
+    public Product get(int id) {
+        return products.get(id);
+    }
+
+    @Override
+    public boolean contains(int id) {
+        return products.containsKey(id);
+    }
+
+    @Override
+    public void put(Product product) {
+        products.put(product.getId(), product);
+    }
+
+    @Override
+    public int size() {
+        return products.size();
+    }
+
+    @Override
+    public void forEach(Consumer<? super Product> action) {
+        products.forEachValue(action);
+    }
+}
@@ -0,0 +1,73 @@
+package labs.pm.data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call count and latency distribution of one operation, recorded without locks. Latencies go into
+ * log-linear buckets, four per power of two, so percentiles are upper bounds within 25%.
+ */
+class OperationStats {
+
+    private static final LogLinearBuckets BUCKETS = new LogLinearBuckets(2);
+
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+    private final LongAdder[] buckets = new LongAdder[BUCKETS.size()];
+    private volatile long lastNanos;
+
+    OperationStats() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        count.increment();
+        totalNanos.add(value);
+        maxNanos.accumulate(value);
+        buckets[BUCKETS.indexOf(value)].increment();
+        lastNanos = value;
+    }
+
+    long getCount() {
+        return count.sum();
+    }
+
+    long getLastNanos() {
+        return lastNanos;
+    }
+
+    void reset() {
+        count.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        lastNanos = 0;
+    }
+
+    Map<String, Long> toMap() {
+        long[] counts = new long[buckets.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        long max = maxNanos.get();
+        Map<String, Long> stats = new LinkedHashMap<>();
+        stats.put("count", total);
+        stats.put("meanNanos", total == 0 ? 0 : totalNanos.sum() / total);
+        stats.put("p50Nanos", BUCKETS.percentile(counts, total, 50, max));
+        stats.put("p99Nanos", BUCKETS.percentile(counts, total, 99, max));
+        stats.put("p999Nanos", BUCKETS.percentile(counts, total, 99.9, max));
+        stats.put("maxNanos", max);
+        stats.put("lastNanos", lastNanos);
+        return stats;
+    }
+}
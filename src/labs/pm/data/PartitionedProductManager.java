@@ -0,0 +1,351 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Products hash-partitioned by id over independent ProductManager shards, each with its own catalog, locks,
+ * writer and journal, and with partition.folders its own data subfolder; otherwise the shards share the data
+ * folder and each loads its own products from it. Operations on one product go to the shard holding it.
+ * Listings are gathered from every shard on a fork-join pool, merging the shards' sorted lists, and discount
+ * totals add up the shards' partial totals; a gathered result combines each shard's latest version, it is
+ * not one version of the whole catalog.
+ */
+public class PartitionedProductManager implements AutoCloseable {
+
+    private static final Logger logger = Logger.getLogger(PartitionedProductManager.class.getName());
+
+    /**
+     * The shards' discount totals added up as of their snapshot versions, so the formatted totals it caches
+     * serve every call until a shard changes.
+     */
+    private static class MergedDiscounts {
+
+        private final long[] versions;
+        private final DiscountTotals totals;
+
+        private MergedDiscounts(long[] versions, DiscountTotals totals) {
+            this.versions = versions;
+            this.totals = totals;
+        }
+    }
+
+    private final ProductManager[] shards;
+    private final ForkJoinPool pool;
+    private final AtomicReference<MergedDiscounts> discounts = new AtomicReference<>();
+
+    /**
+     * Creates partition.count shards with the given config.properties keys overridden.
+     */
+    public static PartitionedProductManager newInstance(Map<String, String> settings) {
+        return new PartitionedProductManager(settings);
+    }
+
+    private PartitionedProductManager(Map<String, String> settings) {
+        ResourceBundle config = ResourceBundle.getBundle("labs.pm.data.config");
+        int count = Integer.parseInt(setting(settings, config, "partition.count"));
+        if (count < 1) {
+            throw new IllegalArgumentException("Invalid partition count " + count);
+        }
+        pool = new ForkJoinPool(Math.min(count, Runtime.getRuntime().availableProcessors()));
+        // the shards load their data in parallel
+        List<ForkJoinTask<ProductManager>> started = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Map<String, String> shard = shardSettings(settings, config, i, count);
+            started.add(pool.submit(() -> ProductManager.newInstance(shard)));
+        }
+        shards = started.stream().map(ForkJoinTask::join).toArray(ProductManager[]::new);
+    }
+
+    private static String setting(Map<String, String> settings, ResourceBundle config, String key) {
+        String value = settings.get(key);
+        return value != null ? value : config.getString(key);
+    }
+
+    private static Map<String, String> shardSettings(Map<String, String> settings, ResourceBundle config, int index, int count) {
+        Map<String, String> shard = new HashMap<>(settings);
+        String name = "shard" + index;
+        shard.put("partition.index", String.valueOf(index));
+        shard.put("partition.count", String.valueOf(count));
+        shard.put("temp.folder", Path.of(setting(settings, config, "temp.folder")).resolve(name).toString());
+        if (Boolean.parseBoolean(setting(settings, config, "partition.folders"))) {
+            Path dataFolder = Path.of(setting(settings, config, "data.folder")).resolve(name);
+            try {
+                Files.createDirectories(dataFolder);
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error creating data folder " + e.getMessage(), e);
+            }
+            shard.put("data.folder", dataFolder.toString());
+        } else {
+            shard.put("journal.file", name + "-" + setting(settings, config, "journal.file"));
+        }
+        if (setting(settings, config, "load.threads").equals("0")) {
+            shard.put("load.threads", String.valueOf(Math.max(1, Runtime.getRuntime().availableProcessors() / count)));
+        }
+        return shard;
+    }
+
+    /**
+     * The shard of a product id, spreading runs of consecutive ids evenly.
+     */
+    static int partitionOf(int id, int partitions) {
+        int hash = id * 0x9E3779B9;
+        return Math.floorMod(hash ^ hash >>> 16, partitions);
+    }
+
+    private ProductManager shard(int id) {
+        return shards[partitionOf(id, shards.length)];
+    }
+
+    @Override
+    public void close() {
+        for (ProductManager shard : shards) {
+            shard.close();
+        }
+        pool.shutdown();
+    }
+
+    public int getPartitionCount() {
+        return shards.length;
+    }
+
+    public void loadAllData() {
+        forEachShard(ProductManager::loadAllData);
+    }
+
+    public void dumpData() {
+        forEachShard(ProductManager::dumpData);
+    }
+
+    public void restoreData() {
+        forEachShard(ProductManager::restoreData);
+    }
+
+    public void compactJournal() {
+        forEachShard(ProductManager::compactJournal);
+    }
+
+    public Product createProduct(int id, String name, BigDecimal price, Rating rating, LocalDate bestBefore) {
+        return shard(id).createProduct(id, name, price, rating, bestBefore);
+    }
+
+    public Product createProduct(int id, String name, BigDecimal price, Rating rating) {
+        return shard(id).createProduct(id, name, price, rating);
+    }
+
+    public CompletableFuture<Product> createProductAsync(int id, String name, BigDecimal price, Rating rating, LocalDate bestBefore) {
+        return shard(id).createProductAsync(id, name, price, rating, bestBefore);
+    }
+
+    public CompletableFuture<Product> createProductAsync(int id, String name, BigDecimal price, Rating rating) {
+        return shard(id).createProductAsync(id, name, price, rating);
+    }
+
+    public Product reviewProduct(int id, Rating rating, String comments) {
+        return shard(id).reviewProduct(id, rating, comments);
+    }
+
+    public CompletableFuture<Product> reviewProductAsync(int id, Rating rating, String comments) {
+        return shard(id).reviewProductAsync(id, rating, comments);
+    }
+
+    public List<BatchResult<Product>> createProducts(Collection<NewProduct> products) {
+        return createProductsAsync(products).join();
+    }
+
+    /**
+     * Splits the batch by shard; each part is created and journaled as one batch of its shard.
+     */
+    public CompletableFuture<List<BatchResult<Product>>> createProductsAsync(Collection<NewProduct> products) {
+        return route(products, NewProduct::getId, ProductManager::createProductsAsync);
+    }
+
+    public List<BatchResult<Product>> reviewProducts(Collection<NewReview> reviews) {
+        return reviewProductsAsync(reviews).join();
+    }
+
+    public CompletableFuture<List<BatchResult<Product>>> reviewProductsAsync(Collection<NewReview> reviews) {
+        return route(reviews, NewReview::getProductId, ProductManager::reviewProductsAsync);
+    }
+
+    private <T> CompletableFuture<List<BatchResult<Product>>> route(Collection<T> items, ToIntFunction<T> id,
+            BiFunction<ProductManager, List<T>, CompletableFuture<List<BatchResult<Product>>>> submit) {
+        List<T> batch = List.copyOf(items);
+        int[] shardOf = new int[batch.size()];
+        List<List<T>> parts = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            parts.add(new ArrayList<>());
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            shardOf[i] = partitionOf(id.applyAsInt(batch.get(i)), shards.length);
+            parts.get(shardOf[i]).add(batch.get(i));
+        }
+        List<CompletableFuture<List<BatchResult<Product>>>> results = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            results.add(parts.get(i).isEmpty()
+                    ? CompletableFuture.completedFuture(List.of())
+                    : submit.apply(shards[i], parts.get(i)));
+        }
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            // each shard's results are in the order of its part, which is the batch order
+            List<BatchResult<Product>> merged = new ArrayList<>(batch.size());
+            int[] next = new int[shards.length];
+            for (int shard : shardOf) {
+                merged.add(results.get(shard).join().get(next[shard]++));
+            }
+            return merged;
+        });
+    }
+
+    public Product findProduct(int id) throws ProductManagerException {
+        return shard(id).findProduct(id);
+    }
+
+    public CompletableFuture<Product> findProductAsync(int id) {
+        return shard(id).findProductAsync(id);
+    }
+
+    public RatingHistogram getRatingHistogram(int id) throws ProductManagerException {
+        return shard(id).getRatingHistogram(id);
+    }
+
+    public void printProductReport(int id, String languageTag, String client) {
+        shard(id).printProductReport(id, languageTag, client);
+    }
+
+    public CompletableFuture<Path> printProductReportAsync(int id, String languageTag, String client) {
+        return shard(id).printProductReportAsync(id, languageTag, client);
+    }
+
+    public void printProductReport(Product product, String languageTag, String client) throws IOException {
+        shard(product.getId()).printProductReport(product, languageTag, client);
+    }
+
+    public void printProducts(Predicate<Product> filter, Comparator<Product> sorter, String languageTag) {
+        List<Product> products = gather(shard -> shard.snapshot().getProducts(filter, sorter),
+                (left, right) -> merge(left, right, sorter, Integer.MAX_VALUE));
+        ProductManager.printLines(products.iterator(), languageTag);
+    }
+
+    /**
+     * Takes the first offset + limit products of each shard and merges them, so an offset costs every shard.
+     */
+    public List<Product> findProducts(ProductQuery query) {
+        int offset = query.getOffset();
+        int window = (int) Math.min(Integer.MAX_VALUE, (long) offset + query.getLimit());
+        ProductQuery first = query.page(query.getAfter(), 0, window);
+        Comparator<Product> order = query.comparator();
+        List<Product> products = gather(shard -> shard.findProducts(first),
+                (left, right) -> merge(left, right, order, window));
+        return new ArrayList<>(products.subList(Math.min(offset, products.size()), products.size()));
+    }
+
+    public void printProducts(ProductQuery query, String languageTag) {
+        ProductManager.printLines(findProducts(query).iterator(), languageTag);
+    }
+
+    public Map<String, String> getDiscounts(String languageTag) {
+        if (!ResourceFormatter.getSupportedLocales().contains(languageTag)) {
+            languageTag = ResourceFormatter.DEFAULT_LANGUAGE_TAG;
+        }
+        CatalogSnapshot[] snapshots = new CatalogSnapshot[shards.length];
+        long[] versions = new long[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            snapshots[i] = shards[i].snapshot();
+            versions[i] = snapshots[i].getVersion();
+        }
+        MergedDiscounts merged = discounts.get();
+        if (merged == null || !Arrays.equals(merged.versions, versions)) {
+            DiscountTotals totals = snapshots[0].discounts();
+            for (int i = 1; i < snapshots.length; i++) {
+                totals = totals.plus(snapshots[i].discounts());
+            }
+            merged = new MergedDiscounts(versions, totals);
+            // a caller that read older versions may replace a newer entry, that only costs a merge
+            discounts.set(merged);
+        }
+        return merged.totals.format(languageTag, Drink.isHappyHour(LocalTime.now()), ResourceFormatter.of(languageTag)::formatMoney);
+    }
+
+    public CompletableFuture<Map<String, String>> getDiscountsAsync(String languageTag) {
+        return CompletableFuture.completedFuture(getDiscounts(languageTag));
+    }
+
+    /**
+     * Two sorted lists as one, up to max elements; the left list comes first among equal elements.
+     */
+    private static <T> List<T> merge(List<T> left, List<T> right, Comparator<? super T> order, int max) {
+        List<T> merged = new ArrayList<>((int) Math.min(max, (long) left.size() + right.size()));
+        int i = 0;
+        int j = 0;
+        while (merged.size() < max && (i < left.size() || j < right.size())) {
+            if (j == right.size() || i < left.size() && order.compare(right.get(j), left.get(i)) >= 0) {
+                merged.add(left.get(i++));
+            } else {
+                merged.add(right.get(j++));
+            }
+        }
+        return merged;
+    }
+
+    private <T> T gather(Function<ProductManager, T> map, BinaryOperator<T> merge) {
+        return pool.invoke(new Gather<>(0, shards.length, map, merge));
+    }
+
+    private void forEachShard(Consumer<ProductManager> action) {
+        gather(shard -> {
+            action.accept(shard);
+            return null;
+        }, (left, right) -> null);
+    }
+
+    /**
+     * Maps the shards of a range and merges the results, splitting the range in halves run in parallel.
+     */
+    private class Gather<T> extends RecursiveTask<T> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final Function<ProductManager, T> map;
+        private final BinaryOperator<T> merge;
+
+        private Gather(int from, int to, Function<ProductManager, T> map, BinaryOperator<T> merge) {
+            this.from = from;
+            this.to = to;
+            this.map = map;
+            this.merge = merge;
+        }
+
+        @Override
+        protected T compute() {
+            if (to - from == 1) {
+                return map.apply(shards[from]);
+            }
+            int middle = (from + to) >>> 1;
+            Gather<T> left = new Gather<>(from, middle, map, merge);
+            left.fork();
+            T right = new Gather<>(middle, to, map, merge).compute();
+            return merge.apply(left.join(), right);
+        }
+    }
+}
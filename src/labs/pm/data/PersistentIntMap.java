@@ -0,0 +1,102 @@
+package labs.pm.data;
+
+import java.util.function.Consumer;
+
+/**
+ * Immutable map keyed by primitive int: a 32-way trie over the key bits, with each node holding only the
+ * children present. with() copies just the path to its key and shares the rest, so older maps stay intact.
+ * Dense keys such as product ids fill whole leaves.
+ */
+class PersistentIntMap<V> {
+
+    private static final int BITS = 5;
+    private static final int TOP_SHIFT = 30;
+
+    private static class Node {
+
+        private final int bitmap;
+        private final Object[] children;
+
+        private Node(int bitmap, Object[] children) {
+            this.bitmap = bitmap;
+            this.children = children;
+        }
+    }
+
+    private static final Node EMPTY_NODE = new Node(0, new Object[0]);
+    private static final PersistentIntMap<?> EMPTY = new PersistentIntMap<>(EMPTY_NODE, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentIntMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        Node node = root;
+        for (int shift = TOP_SHIFT; ; shift -= BITS) {
+            int bit = 1 << ((key >>> shift) & 31);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object child = node.children[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (shift == 0) {
+                return (V) child;
+            }
+            node = (Node) child;
+        }
+    }
+
+    /**
+     * A map with key mapped to value, which must not be null.
+     */
+    PersistentIntMap<V> with(int key, V value) {
+        return new PersistentIntMap<>(with(root, TOP_SHIFT, key, value), get(key) == null ? size + 1 : size);
+    }
+
+    private static Node with(Node node, int shift, int key, Object value) {
+        int bit = 1 << ((key >>> shift) & 31);
+        int index = Integer.bitCount(node.bitmap & (bit - 1));
+        boolean present = (node.bitmap & bit) != 0;
+        Object child = shift == 0
+                ? value
+                : with(present ? (Node) node.children[index] : EMPTY_NODE, shift - BITS, key, value);
+        if (present) {
+            Object[] children = node.children.clone();
+            children[index] = child;
+            return new Node(node.bitmap, children);
+        }
+        Object[] children = new Object[node.children.length + 1];
+        System.arraycopy(node.children, 0, children, 0, index);
+        children[index] = child;
+        System.arraycopy(node.children, index, children, index + 1, node.children.length - index);
+        return new Node(node.bitmap | bit, children);
+    }
+
+    int size() {
+        return size;
+    }
+
+    void forEach(Consumer<? super V> action) {
+        forEach(root, TOP_SHIFT, action);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> void forEach(Node node, int shift, Consumer<? super V> action) {
+        for (Object child : node.children) {
+            if (shift == 0) {
+                action.accept((V) child);
+            } else {
+                forEach((Node) child, shift - BITS, action);
+            }
+        }
+    }
+}
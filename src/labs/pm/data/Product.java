@@ -7,6 +7,7 @@ import java.util.Objects;
 
 public abstract class Product implements Rateable<Product>, Serializable {
 
+    private static final long serialVersionUID = -145005475575900376L;
     public static final BigDecimal DISCOUNT_RATE = BigDecimal.valueOf(0.1);
     private int id;
     private String name;
@@ -65,6 +66,6 @@ public abstract class Product implements Rateable<Product>, Serializable {
 
     @Override
     public int hashCode() {
-        return Objects.hash(id, name, price, rating);
+        return Objects.hash(id);
     }
 }
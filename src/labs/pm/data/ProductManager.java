@@ -2,346 +2,1421 @@ package labs.pm.data;
 
 import java.io.*;
 import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.text.MessageFormat;
-import java.text.NumberFormat;
-import java.text.ParseException;
 import java.time.Instant;
 import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.time.format.FormatStyle;
+import java.time.LocalTime;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiFunction;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-public class ProductManager {
+public class ProductManager implements AutoCloseable {
 
     private static final Logger logger = Logger.getLogger(ProductManager.class.getName());
 
-    private Map<Product, List<Review>> products = new HashMap<>();
+    private final ResourceBundle config;
+    private final ThreadLocal<RecordParser> recordParser = ThreadLocal.withInitial(RecordParser::new);
 
-    private final ResourceBundle config = ResourceBundle.getBundle("labs.pm.data.config");
-    private final MessageFormat productFormat = new MessageFormat(config.getString("product.data.format"));
-    private final MessageFormat reviewFormat = new MessageFormat(config.getString("review.data.format"));
+    private final Path reportsFolder;
+    private final Path dataFolder;
+    private final Path tempFolder;
+    // the ids this manager holds, as one shard of a PartitionedProductManager
+    private final int partition;
+    private final int partitions;
 
-    private final Path reportsFolder = Path.of(config.getString("reports.folder"));
-    private final Path dataFolder = Path.of(config.getString("data.folder"));
-    private final Path tempFolder = Path.of(config.getString("temp.folder"));
+    private static class Holder {
+        private static final ProductManager pm = new ProductManager(Map.of());
+    }
+
+    private final ProductSegments segments;
+    private final ProductSegments.AllStripes catalogReadLock;
 
-    private static Map<String, ResourceFormatter> formatters =
-            Map.of("en-GB", new ResourceFormatter(Locale.UK),
-                    "pt-BR", new ResourceFormatter(Locale.forLanguageTag("pt-BR")));
+    private final String productStore;
+    private final AtomicReference<CatalogSnapshot> current;
+    private final SortedIndexes sortedIndexes = new SortedIndexes();
+    // replaced with the comment dictionary on every load
+    private volatile ReviewIndex reviewIndex;
+    private final ReportCache reportCache;
+    // with lazy review loading, reviews stay in their files until read through the cache
+    private final boolean lazyReviews;
+    private final ReviewCache reviewCache;
+    private final CatalogLoader reviewFiles;
 
-    private static final ProductManager pm = new ProductManager();
+    private final ReportWriter reportWriter;
+    private final CatalogWriter writer;
+    private final ProductManagerMonitor monitor;
 
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-    private final Lock writeLock = lock.writeLock();
-    private final Lock readLock = lock.readLock();
+    private final ReviewJournal journal;
+    private final DataWatcher watcher;
+    private final Set<Integer> uncompacted = ConcurrentHashMap.newKeySet();
+    // number of the last journal record written into the data files
+    private volatile long compacted;
+    // compactions share the staged files and the checkpoint, so they run one at a time
+    private final Lock compactionLock = new ReentrantLock();
+    private ScheduledExecutorService compactor;
+    private Thread journalHook;
 
     public static ProductManager getInstance() {
-        return pm;
+        return Holder.pm;
     }
 
-    private ProductManager() {
+    /**
+     * Creates a manager independent of the shared instance, with the given config.properties keys overridden.
+     */
+    public static ProductManager newInstance(Map<String, String> settings) {
+        return new ProductManager(settings);
+    }
+
+    private ProductManager(Map<String, String> settings) {
+        config = new Settings(settings, ResourceBundle.getBundle("labs.pm.data.config"));
+        reportsFolder = Path.of(config.getString("reports.folder"));
+        dataFolder = Path.of(config.getString("data.folder"));
+        tempFolder = Path.of(config.getString("temp.folder"));
+        partition = Integer.parseInt(config.getString("partition.index"));
+        partitions = Integer.parseInt(config.getString("partition.count"));
+        productStore = config.getString("product.store");
+        segments = new ProductSegments(Integer.parseInt(config.getString("lock.stripes")));
+        current = new AtomicReference<>(new CatalogSnapshot(this, 0, ProductStore.of(productStore), new IntMap<>(), 0,
+                new DiscountTotals(), CommentDictionary.of(config.getString("review.comments"))));
+        catalogReadLock = segments.readLocks();
+        reviewIndex = new ReviewIndex(snapshot().comments());
+        reportCache = new ReportCache(Integer.parseInt(config.getString("report.cache.size")));
+        lazyReviews = config.getString("review.loading").equalsIgnoreCase("lazy");
+        reviewCache = new ReviewCache(Long.parseLong(config.getString("review.cache.bytes")));
+        reviewFiles = new CatalogLoader(dataFolder, 1,
+                config.getString("product.data.file"), config.getString("reviews.data.file"), this::owns);
+        reportWriter = new ReportWriter(Integer.parseInt(config.getString("report.writer.threads")));
+        writer = new CatalogWriter(segments, CatalogWriter.Mode.valueOf(config.getString("catalog.writer").toUpperCase()));
+        monitor = new ProductManagerMonitor(this, segments);
+        journal = openJournal();
+
         loadAllData();
+        watcher = Boolean.parseBoolean(config.getString("data.watch")) ? watchDataFolder() : null;
+        if (journal != null) {
+            scheduleCompaction(Long.parseLong(config.getString("journal.compact.interval")));
+            journalHook = new Thread(this::closeJournal);
+            Runtime.getRuntime().addShutdownHook(journalHook);
+        }
+        if (Boolean.parseBoolean(config.getString("jmx.enabled"))) {
+            monitor.register();
+        }
+    }
+
+    private static class Settings extends ResourceBundle {
+
+        private final Map<String, String> settings;
+
+        private Settings(Map<String, String> settings, ResourceBundle defaults) {
+            this.settings = settings;
+            setParent(defaults);
+        }
+
+        @Override
+        protected Object handleGetObject(String key) {
+            return settings.get(key);
+        }
+
+        @Override
+        public Enumeration<String> getKeys() {
+            Set<String> keys = new HashSet<>(settings.keySet());
+            keys.addAll(parent.keySet());
+            return Collections.enumeration(keys);
+        }
+    }
+
+    private DataWatcher watchDataFolder() {
+        try {
+            return new DataWatcher(this, dataFolder, reviewFiles, Long.parseLong(config.getString("data.watch.debounce")));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error watching data folder " + e.getMessage(), e);
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        monitor.unregister();
+        if (watcher != null) {
+            watcher.close();
+        }
+        writer.close();
+        if (compactor != null) {
+            compactor.shutdown();
+        }
+        reportWriter.close();
+        if (journal != null) {
+            try {
+                // the hook would keep this manager and its catalog reachable until the JVM exits
+                Runtime.getRuntime().removeShutdownHook(journalHook);
+            } catch (IllegalStateException e) {
+                // closed while the JVM shuts down, the hook runs anyway
+            }
+            closeJournal();
+        }
     }
 
     public static Set<String> getSupportedLocales() {
-        return formatters.keySet();
+        return ResourceFormatter.getSupportedLocales();
     }
 
-    private void dumpData() {
+    public void dumpData() {
+        long start = System.nanoTime();
         try {
             if (Files.notExists(tempFolder)) {
-                Files.createDirectory(tempFolder);
+                Files.createDirectories(tempFolder);
             }
             Path tempFile = tempFolder.resolve(MessageFormat.format(config.getString("temp.file"), Instant.now()));
-            try (ObjectOutputStream out = new ObjectOutputStream(Files.newOutputStream(tempFile, StandardOpenOption.CREATE))) {
-                out.writeObject(products);
+            Path partFile = tempFile.resolveSibling(tempFile.getFileName() + ".part");
+            CatalogSnapshot snapshot = snapshot();
+            List<Map.Entry<Product, List<Review>>> catalog = new ArrayList<>(snapshot.size());
+            try {
+                snapshot.forEach((product, reviews) -> {
+                    try {
+                        catalog.add(Map.entry(product, readReviews(snapshot, product.getId(), reviews, false)));
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
             }
+            SnapshotCodec.write(partFile, catalog);
+            Files.move(partFile, tempFile, StandardCopyOption.ATOMIC_MOVE);
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Error dumping data "+e.getMessage(), e);
+        } finally {
+            monitor.record(ProductManagerMonitor.Operation.DUMP_DATA, start);
         }
     }
 
-    @SuppressWarnings("unchecked")
-    private void restoreData() {
+    public void restoreData() {
+        long start = System.nanoTime();
+        writer.submitAll(() -> {
+            restoreSnapshot();
+            return CompletableFuture.completedFuture(null);
+        }).join();
+        monitor.record(ProductManagerMonitor.Operation.RESTORE_DATA, start);
+    }
+
+    private void restoreSnapshot() {
         try {
-            Path tempFile = Files.list(tempFolder)
-                    .filter(path -> path.getFileName().toString().endsWith("tmp"))
-                    .findFirst().orElseThrow();
-            try (ObjectInputStream in = new ObjectInputStream(Files.newInputStream(tempFile, StandardOpenOption.DELETE_ON_CLOSE))) {
-                products = (HashMap) in.readObject();
+            Path tempFile;
+            try (Stream<Path> files = Files.list(tempFolder)) {
+                tempFile = files
+                        .filter(path -> path.getFileName().toString().endsWith("tmp"))
+                        .max(Comparator.comparing(path -> path.toFile().lastModified()))
+                        .orElseThrow();
             }
+            Map<Product, List<Review>> catalog = SnapshotCodec.read(tempFile);
+            Files.delete(tempFile);
+            rebuildIndexes(catalog);
         } catch(Exception e) {
             logger.log(Level.SEVERE, "Error restoring data "+e.getMessage(), e);
         }
     }
 
-    private void loadAllData() {
+    public void loadAllData() {
+        long start = System.nanoTime();
+        writer.submitAll(() -> {
+            loadFiles();
+            return CompletableFuture.completedFuture(null);
+        }).join();
+        monitor.record(ProductManagerMonitor.Operation.LOAD_ALL_DATA, start);
+    }
+
+    private void loadFiles() {
         try {
-            products = Files.list(dataFolder)
-                    .filter(file -> file.getFileName().toString().startsWith("product"))
-                    .map(file -> loadProduct(file))
-                    .filter(product -> product != null)
-                    .collect(Collectors.toMap(product -> product, product -> loadReviews(product)));
+            long checkpoint = finishCompaction();
+            compacted = checkpoint;
+            CatalogLoader loader = new CatalogLoader(dataFolder,
+                    Integer.parseInt(config.getString("load.threads")),
+                    config.getString("product.data.file"), config.getString("reviews.data.file"), this::owns);
+            if (lazyReviews) {
+                rebuildRatings(loader.loadRatings());
+            } else {
+                rebuildIndexes(loader.load());
+            }
+            replayJournal(checkpoint);
         } catch (IOException e) {
             logger.log(Level.SEVERE, "Error loading data " + e.getMessage(), e);
         }
     }
 
-    private Product loadProduct(Path file) {
+    private void rebuildIndexes(Map<Product, List<Review>> catalog) {
+        CommentDictionary comments = CommentDictionary.of(config.getString("review.comments"));
+        ReviewIndex index = new ReviewIndex(comments);
+        rebuildIndexes(catalog, comments, index, (product, reviews) -> {
+            Collections.sort(reviews);
+            ReviewArena arena = ReviewArena.of(reviews, comments);
+            if (!lazyReviews) {
+                indexReviews(index, product.getId(), arena);
+            }
+            segments.of(product.getId()).ratings.put(product.getId(), RatingHistogram.of(reviews));
+            return arena;
+        });
+    }
+
+    /**
+     * Loads the catalog with every review left in its file, only counted by rating.
+     */
+    private void rebuildRatings(Map<Product, RatingHistogram> catalog) {
+        CommentDictionary comments = CommentDictionary.of(config.getString("review.comments"));
+        rebuildIndexes(catalog, comments, new ReviewIndex(comments), (product, ratings) -> {
+            segments.of(product.getId()).ratings.put(product.getId(), ratings);
+            return ReviewArena.filed((int) ratings.getTotal());
+        });
+    }
+
+    private <T> void rebuildIndexes(Map<Product, T> catalog, CommentDictionary comments, ReviewIndex index,
+                                    BiFunction<Product, T, ReviewArena> arenas) {
+        segments.forEach(ProductSegments.Segment::clear);
+        sortedIndexes.clear();
+        reportCache.clear();
+        reviewCache.clear();
+        ProductStore products = ProductStore.of(productStore);
+        IntMap<ReviewArena> reviewArenas = new IntMap<>(catalog.size());
+        long reviewCount = 0;
+        for (Map.Entry<Product, T> entry : catalog.entrySet()) {
+            Product product = entry.getKey();
+            if (!owns(product.getId())) {
+                continue;
+            }
+            if (products.contains(product.getId())) {
+                logger.log(Level.WARNING, "Duplicate product id " + product.getId());
+                continue;
+            }
+            ReviewArena arena = arenas.apply(product, entry.getValue());
+            reviewCount += arena.size();
+            sortedIndexes.add(product);
+            products.put(product);
+            reviewArenas.put(product.getId(), arena);
+        }
+        reviewIndex = index;
+        current.set(new CatalogSnapshot(this, snapshot().getVersion() + 1, products, reviewArenas, reviewCount,
+                DiscountTotals.of(products), comments));
+    }
+
+    private boolean owns(int id) {
+        return partitions == 1 || PartitionedProductManager.partitionOf(id, partitions) == partition;
+    }
+
+    private static void indexReviews(ReviewIndex index, int id, ReviewArena reviews) {
+        for (int i = 0; i < reviews.held(); i++) {
+            index.add(id, reviews.comment(i));
+        }
+    }
+
+    /**
+     * The current catalog version; reads through it take no locks and don't see later changes.
+     */
+    public CatalogSnapshot snapshot() {
+        return current.get();
+    }
+
+    private void publish(Product product, ReviewArena reviews) {
+        // writers of other stripes may publish concurrently in direct mode, this product's stripe is held
+        current.updateAndGet(snapshot -> snapshot.with(product, reviews));
+    }
+
+    private void publish(List<Product> products, List<ReviewArena> reviews) {
+        publish(products, reviews, List.of());
+    }
+
+    private void publish(List<Product> products, List<ReviewArena> reviews, List<Integer> removed) {
+        if (products.isEmpty() && removed.isEmpty()) {
+            return;
+        }
+        current.updateAndGet(snapshot -> snapshot.with(products, reviews, removed));
+    }
+
+    /**
+     * Swaps products reloaded from their files into the catalog and removes those whose files are gone, as
+     * one version; returns the number of products changed. Reviews added since the last compaction are not
+     * in the files yet, so they are kept on top of the reloaded ones, as a restart replays them from the journal.
+     */
+    int reloadProducts(List<Map.Entry<Product, List<Review>>> reloaded, Set<Integer> removed) {
+        return writer.submitAll(() -> {
+            CatalogSnapshot snapshot = snapshot();
+            // lazy arenas hold the reviews added since the last compaction, eager ones are read back from the journal
+            Map<Integer, List<Review>> journaled = lazyReviews ? Map.of() : journaledReviews(reloaded);
+            List<Product> published = new ArrayList<>(reloaded.size());
+            List<ReviewArena> arenas = new ArrayList<>(reloaded.size());
+            for (Map.Entry<Product, List<Review>> entry : reloaded) {
+                Product product = entry.getKey();
+                int id = product.getId();
+                if (journaled == null && uncompacted.contains(id)) {
+                    // keep the loaded product rather than lose its journaled reviews
+                    continue;
+                }
+                List<Review> reviews = entry.getValue();
+                ReviewArena held = snapshot.reviews(id);
+                unindex(snapshot, id);
+                ReviewArena arena;
+                RatingHistogram ratings;
+                if (lazyReviews) {
+                    Collections.sort(reviews);
+                    ratings = RatingHistogram.of(reviews);
+                    arena = ReviewArena.filed(reviews.size());
+                    reviewCache.put(id, reviews.size(), Collections.unmodifiableList(reviews));
+                    if (held != null && held.held() > 0) {
+                        Rating[] added = new Rating[held.held()];
+                        int[] addedComments = new int[held.held()];
+                        for (int i = 0; i < added.length; i++) {
+                            added[i] = held.rating(i);
+                            addedComments[i] = held.comment(i);
+                            ratings.add(added[i]);
+                        }
+                        arena = arena.with(added, addedComments);
+                    }
+                } else {
+                    reviews.addAll(journaled.getOrDefault(id, List.of()));
+                    Collections.sort(reviews);
+                    ratings = RatingHistogram.of(reviews);
+                    arena = ReviewArena.of(reviews, snapshot.comments());
+                    indexReviews(reviewIndex, id, arena);
+                }
+                segments.of(id).ratings.put(id, ratings);
+                sortedIndexes.add(product);
+                published.add(product);
+                arenas.add(arena);
+            }
+            List<Integer> gone = new ArrayList<>(removed.size());
+            for (int id : removed) {
+                if (unindex(snapshot, id)) {
+                    segments.of(id).ratings.remove(id);
+                    gone.add(id);
+                }
+            }
+            publish(published, arenas, gone);
+            return CompletableFuture.completedFuture(published.size() + gone.size());
+        }).join();
+    }
+
+    /**
+     * The reviews of the reloaded products journaled since the last compaction, in arrival order, or null if
+     * the journal can't be read.
+     */
+    private Map<Integer, List<Review>> journaledReviews(List<Map.Entry<Product, List<Review>>> reloaded) {
+        Set<Integer> ids = new HashSet<>();
+        for (Map.Entry<Product, List<Review>> entry : reloaded) {
+            if (uncompacted.contains(entry.getKey().getId())) {
+                ids.add(entry.getKey().getId());
+            }
+        }
+        if (journal == null || ids.isEmpty()) {
+            return Map.of();
+        }
+        Map<Integer, List<Review>> reviews = new HashMap<>();
+        try {
+            journal.replay(compacted, record -> {
+                String[] values = record.split(",", 4);
+                if (values.length < 4 || !values[0].equals("R")) {
+                    return;
+                }
+                try {
+                    int id = Integer.parseInt(values[1]);
+                    Review review = ids.contains(id) ? parseReview(values[2] + ',' + values[3]) : null;
+                    if (review != null) {
+                        reviews.computeIfAbsent(id, key -> new ArrayList<>()).add(review);
+                    }
+                } catch (NumberFormatException e) {
+                    // skipped on restart too
+                }
+            });
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error reading journal " + e.getMessage());
+            return null;
+        }
+        return reviews;
+    }
+
+    private boolean unindex(CatalogSnapshot snapshot, int id) {
+        Product previous = snapshot.product(id);
+        if (previous == null) {
+            return false;
+        }
+        sortedIndexes.remove(previous);
+        reviewIndex.clear(id);
+        reviewCache.invalidate(id);
+        reportCache.invalidate(id, snapshot.versionOf(id));
+        return true;
+    }
+
+    private ReviewJournal openJournal() {
+        String durability = config.getString("journal.durability");
+        if (durability.equalsIgnoreCase("off")) {
+            return null;
+        }
         try {
-            return parseProduct(
-                    Files.lines(dataFolder.resolve(file), Charset.forName("UTF-8"))
-                            .findFirst().orElseThrow()
-            );
+            return new ReviewJournal(dataFolder.resolve(config.getString("journal.file")),
+                    ReviewJournal.Durability.valueOf(durability.toUpperCase()),
+                    Long.parseLong(config.getString("journal.commit.interval")));
         } catch (IOException e) {
-            logger.log(Level.WARNING, "Error loading product " + e.getMessage());
+            logger.log(Level.SEVERE, "Error opening journal " + e.getMessage(), e);
         }
         return null;
     }
 
-    private List<Review> loadReviews(Product product) {
-        Path file = dataFolder.resolve(MessageFormat.format(config.getString("reviews.data.file"), product.getId()));
-        List<Review> reviews = null;
+    private void replayJournal(long checkpoint) throws IOException {
+        if (journal != null) {
+            int[] count = {0};
+            journal.replay(checkpoint, record -> {
+                applyJournalRecord(record);
+                count[0]++;
+            });
+            logger.log(Level.INFO, "Replayed " + count[0] + " journal records");
+        }
+    }
+
+    private void applyJournalRecord(String record) {
+        String[] values = record.split(",", 4);
+        try {
+            switch (values[0]) {
+                case "P":
+                    Product product = parseProduct(record.substring(2));
+                    if (product != null && addProduct(product)) {
+                        uncompacted.add(product.getId());
+                    }
+                    break;
+                case "R":
+                    int id = Integer.parseInt(values[1]);
+                    Review review = parseReview(values[2] + ',' + values[3]);
+                    if (review != null) {
+                        reviewProduct(lookupProduct(id), review.getRating(), review.getComments());
+                        uncompacted.add(id);
+                    }
+                    break;
+                default:
+                    logger.log(Level.WARNING, "Unknown journal record " + record);
+            }
+        } catch (ProductManagerException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            logger.log(Level.WARNING, "Error replaying journal record " + record);
+        }
+    }
 
-        if (Files.notExists(file)) {
-            reviews = new ArrayList<>();
-        } else {
-            try {
-                reviews = Files.lines(file, Charset.forName("UTF-8"))
-                        .map(text -> parseReview(text))
-                        .filter(review -> review != null)
-                        .collect(Collectors.toList());
-            } catch (IOException e) {
-                logger.log(Level.WARNING, "Error loading reviews " + e.getMessage());
+    private CompletableFuture<Void> journal(int id, String record) {
+        if (journal == null) {
+            return null;
+        }
+        uncompacted.add(id);
+        return journal.append(record);
+    }
+
+    private CompletableFuture<Void> journal(List<Product> products, List<String> records) {
+        if (journal == null || records.isEmpty()) {
+            return null;
+        }
+        products.forEach(product -> uncompacted.add(product.getId()));
+        return journal.append(records);
+    }
+
+    private static <T> CompletableFuture<T> committed(CompletableFuture<Void> commit, T value) {
+        if (commit == null) {
+            return CompletableFuture.completedFuture(value);
+        }
+        return commit.handle((done, e) -> {
+            if (e != null) {
+                logger.log(Level.SEVERE, "Error committing journal record " + e.getMessage(), e);
             }
+            return value;
+        });
+    }
+
+    private void scheduleCompaction(long interval) {
+        if (interval > 0) {
+            compactor = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "journal-compactor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            compactor.scheduleWithFixedDelay(this::compactJournal, interval, interval, TimeUnit.SECONDS);
         }
-        return reviews;
+    }
+
+    public void compactJournal() {
+        if (journal == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            compactionLock.lock();
+            catalogReadLock.lockAll();
+            if (uncompacted.isEmpty()) {
+                return;
+            }
+            journal.flush();
+            finishCompaction();
+            // no writer holds a stripe, so the snapshot has every journalled change
+            long sequence = journal.getSequence();
+            CatalogSnapshot snapshot = snapshot();
+            List<Product> filed = new ArrayList<>();
+            List<ReviewArena> arenas = new ArrayList<>();
+            List<Path> staged = new ArrayList<>();
+            for (Integer id : uncompacted) {
+                Product product = snapshot.product(id);
+                if (product != null) {
+                    ReviewArena reviews = snapshot.reviews(id);
+                    staged.addAll(stageProductFiles(product, reviews, snapshot.comments()));
+                    filed.add(product);
+                    arenas.add(ReviewArena.filed(reviews.size()));
+                }
+            }
+            // the checkpoint commits the staged files: from here on a restart moves them into place and
+            // replays only the records after them
+            writeCheckpoint(sequence, staged);
+            for (Path file : staged) {
+                moveFile(tempFile(file), file);
+            }
+            writeCheckpoint(sequence, List.of());
+            compacted = sequence;
+            journal.truncate();
+            if (lazyReviews) {
+                // the reviews added since the load are in the files now, later versions read them from there
+                publish(filed, arenas);
+            }
+            logger.log(Level.INFO, "Compacted journal into " + uncompacted.size() + " product files");
+            uncompacted.clear();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error compacting journal " + e.getMessage(), e);
+        } finally {
+            catalogReadLock.unlockAll();
+            compactionLock.unlock();
+            monitor.record(ProductManagerMonitor.Operation.COMPACT_JOURNAL, start);
+        }
+    }
+
+    /**
+     * Writes the product's files next to them, to be moved into place; the reviews left in the reviews file
+     * are kept as they are, with the reviews held in memory written after them. Returns the files to replace.
+     */
+    private List<Path> stageProductFiles(Product product, ReviewArena reviews, CommentDictionary comments) throws IOException {
+        Path productFile = dataFolder.resolve(MessageFormat.format(config.getString("product.data.file"), String.valueOf(product.getId())));
+        writeFile(tempFile(productFile), List.of(formatProductRecord(product)));
+        List<String> lines = reviews.filed() == 0 ? new ArrayList<>(reviews.held())
+                : reviewFiles.reviewLines(product.getId(), reviews.filed());
+        for (int i = 0; i < reviews.held(); i++) {
+            lines.add(formatReviewRecord(reviews.rating(i), comments.decode(reviews.comment(i)).replaceAll("\\R", " ")));
+        }
+        Path reviewsFile = dataFolder.resolve(MessageFormat.format(config.getString("reviews.data.file"), String.valueOf(product.getId())));
+        writeFile(tempFile(reviewsFile), lines);
+        return List.of(productFile, reviewsFile);
+    }
+
+    private Path checkpointFile() {
+        return dataFolder.resolve(config.getString("journal.file") + ".checkpoint");
+    }
+
+    /**
+     * Records the number of the last journal record compacted, then the names of the data files staged
+     * with it and not yet moved into place.
+     */
+    private void writeCheckpoint(long sequence, List<Path> staged) throws IOException {
+        List<String> lines = new ArrayList<>(staged.size() + 1);
+        lines.add(String.valueOf(sequence));
+        for (Path file : staged) {
+            lines.add(file.getFileName().toString());
+        }
+        Path file = checkpointFile();
+        writeFile(tempFile(file), lines);
+        moveFile(tempFile(file), file);
+    }
+
+    /**
+     * Moves the staged files of a compaction interrupted after its checkpoint into place; returns the number
+     * of the last journal record the data files hold.
+     */
+    private long finishCompaction() throws IOException {
+        Path file = checkpointFile();
+        if (journal == null || Files.notExists(file)) {
+            return 0;
+        }
+        List<String> lines = Files.readAllLines(file);
+        long sequence;
+        try {
+            sequence = Long.parseLong(lines.get(0));
+        } catch (NumberFormatException | IndexOutOfBoundsException e) {
+            throw new IOException("Invalid journal checkpoint " + file);
+        }
+        if (lines.size() > 1) {
+            List<Path> staged = new ArrayList<>(lines.size() - 1);
+            for (String name : lines.subList(1, lines.size())) {
+                staged.add(dataFolder.resolve(name));
+            }
+            for (Path staging : staged) {
+                if (Files.exists(tempFile(staging))) {
+                    moveFile(tempFile(staging), staging);
+                }
+            }
+            writeCheckpoint(sequence, List.of());
+            logger.log(Level.WARNING, "Finished an interrupted journal compaction of " + staged.size() + " files");
+        }
+        return sequence;
+    }
+
+    private static Path tempFile(Path file) {
+        return file.resolveSibling("." + file.getFileName() + ".tmp");
+    }
+
+    private void writeFile(Path temp, List<String> lines) throws IOException {
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            // a product without reviews gets an empty reviews file, not one blank line
+            ByteBuffer buffer = StandardCharsets.UTF_8.encode(lines.isEmpty() ? "" : String.join("\n", lines) + '\n');
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+    }
+
+    private void moveFile(Path temp, Path file) throws IOException {
+        if (watcher != null) {
+            watcher.expect(file, Files.getLastModifiedTime(temp));
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void closeJournal() {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Error closing journal " + e.getMessage(), e);
+        }
+    }
+
+    private String formatProductRecord(Product product) {
+        return MessageFormat.format(config.getString("product.data.format"),
+                product instanceof Food ? "F" : "D",
+                String.valueOf(product.getId()),
+                product.getName(),
+                product.getPrice().toPlainString(),
+                String.valueOf(product.getRating().ordinal()),
+                product.getBestBefore().toString());
+    }
+
+    private String formatReviewRecord(Rating rating, String comments) {
+        return MessageFormat.format(config.getString("review.data.format"), String.valueOf(rating.ordinal()), comments);
     }
 
     private Review parseReview(String txt) {
-        Review review = null;
         try {
-            Object[] values = reviewFormat.parse(txt);
-            review = new Review(Rateable.convert(Integer.parseInt((String) values[0])), (String) values[1]);
-        } catch (ParseException | NullPointerException e) {
-            logger.log(Level.WARNING, "Error parsing review " + txt);
+            return recordParser.get().parseReview(txt);
+        } catch (RecordParseException e) {
+            logger.log(Level.WARNING, "Error parsing review " + e.getMessage());
         }
-        return review;
+        return null;
     }
 
     private Product parseProduct(String txt) {
-        Product product = null;
         try {
-            Object[] values = productFormat.parse(txt);
-            int id = Integer.parseInt((String) values[1]);
-            String name = (String) values[2];
-            BigDecimal price = BigDecimal.valueOf(Double.parseDouble((String) values[3]));
-            Rating rating = Rateable.convert(Integer.parseInt((String) values[4]));
-            switch ((String) values[0]) {
-                case "D":
-                    product = new Drink(id, name, price, rating);
-                    break;
-                case "F":
-                    LocalDate bestBefore = LocalDate.parse((String) values[5]);
-                    product = new Food(id, name, price, rating, bestBefore);
-            }
-        } catch (ParseException | NullPointerException | DateTimeParseException e) {
-            logger.log(Level.WARNING, "Error parsing product " + txt);
+            return recordParser.get().parseProduct(txt);
+        } catch (RecordParseException e) {
+            logger.log(Level.WARNING, "Error parsing product " + e.getMessage());
         }
-        return product;
+        return null;
     }
 
     public Product createProduct(int id, String name, BigDecimal price, Rating rating, LocalDate bestBefore) {
-        Product product = null;
+        return createProductAsync(id, name, price, rating, bestBefore).join();
+    }
+
+    public Product createProduct(int id, String name, BigDecimal price, Rating rating) {
+        return createProductAsync(id, name, price, rating).join();
+    }
+
+    /**
+     * The returned futures complete on the catalog writer or journal thread, so slow dependent
+     * actions should use the *Async stages.
+     */
+    public CompletableFuture<Product> createProductAsync(int id, String name, BigDecimal price, Rating rating, LocalDate bestBefore) {
+        return createProduct(new Food(id, name, price, rating, bestBefore));
+    }
+
+    public CompletableFuture<Product> createProductAsync(int id, String name, BigDecimal price, Rating rating) {
+        return createProduct(new Drink(id, name, price, rating));
+    }
+
+    private CompletableFuture<Product> createProduct(Product product) {
+        long start = System.nanoTime();
+        return monitor.record(ProductManagerMonitor.Operation.CREATE_PRODUCT, start, writer.submit(product.getId(), () -> {
+            if (addProduct(product)) {
+                return committed(journal(product.getId(), "P," + formatProductRecord(product)), product);
+            }
+            return CompletableFuture.completedFuture(product);
+        }));
+    }
+
+    private boolean addProduct(Product product) {
+        if (snapshot().contains(product.getId())) {
+            return false;
+        }
+        segments.of(product.getId()).ratings.put(product.getId(), new RatingHistogram());
+        sortedIndexes.add(product);
+        publish(product, ReviewArena.EMPTY);
+        return true;
+    }
+
+    public Product reviewProduct(int id, Rating rating, String comments) {
         try {
-            writeLock.lock();
-            product = new Food(id, name, price, rating, bestBefore);
-            products.putIfAbsent(product, new ArrayList<>());
-        } finally {
-            writeLock.unlock();
+            return reviewProductAsync(id, rating, comments).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof ProductManagerException) {
+                logger.log(Level.INFO, e.getCause().getMessage());
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    public CompletableFuture<Product> reviewProductAsync(int id, Rating rating, String comments) {
+        long start = System.nanoTime();
+        return monitor.record(ProductManagerMonitor.Operation.REVIEW_PRODUCT, start, writer.submit(id, () -> {
+            Product product = reviewProduct(lookupProduct(id), rating, comments);
+            return committed(journal(id, "R," + id + "," + formatReviewRecord(rating, comments)), product);
+        }));
+    }
+
+    private Product reviewProduct(Product product, Rating rating, String comments) {
+        CatalogSnapshot snapshot = snapshot();
+        int comment = snapshot.comments().encode(comments);
+        ReviewArena reviews = snapshot.reviews(product.getId()).with(rating, comment);
+        if (!lazyReviews) {
+            reviewIndex.add(product.getId(), comment);
         }
+        reportCache.invalidate(product.getId(), snapshot.versionOf(product.getId()));
+
+        RatingHistogram histogram = segments.of(product.getId()).ratings.get(product.getId());
+        histogram.add(rating);
+        Product previous = product;
+        product = product.applyRating(histogram.getAverage());
+        sortedIndexes.remove(previous);
+        sortedIndexes.add(product);
+        publish(product, reviews);
         return product;
     }
 
-    public Product createProduct(int id, String name, BigDecimal price, Rating rating) {
-        Product product = null;
+    public List<BatchResult<Product>> createProducts(Collection<NewProduct> products) {
+        return createProductsAsync(products).join();
+    }
+
+    /**
+     * Creates the products under one acquisition of the catalog write lock and publishes them as one version,
+     * journaled in one group commit. Results are in the order given; an id already in the catalog or earlier
+     * in the batch is rejected.
+     */
+    public CompletableFuture<List<BatchResult<Product>>> createProductsAsync(Collection<NewProduct> products) {
+        long start = System.nanoTime();
+        List<NewProduct> batch = List.copyOf(products);
+        return monitor.record(ProductManagerMonitor.Operation.CREATE_PRODUCTS, start, writer.submitAll(() -> {
+            CatalogSnapshot snapshot = snapshot();
+            List<BatchResult<Product>> results = new ArrayList<>(batch.size());
+            IntMap<Product> added = new IntMap<>(batch.size());
+            List<Product> published = new ArrayList<>(batch.size());
+            List<String> records = new ArrayList<>(batch.size());
+            for (NewProduct item : batch) {
+                Product product = item.getProduct();
+                if (snapshot.contains(product.getId()) || added.containsKey(product.getId())) {
+                    results.add(BatchResult.failed(
+                            new ProductManagerException("Product with id " + product.getId() + " already exists")));
+                    continue;
+                }
+                segments.of(product.getId()).ratings.put(product.getId(), new RatingHistogram());
+                sortedIndexes.add(product);
+                added.put(product.getId(), product);
+                published.add(product);
+                records.add("P," + formatProductRecord(product));
+                results.add(BatchResult.of(product));
+            }
+            publish(published, Collections.nCopies(published.size(), ReviewArena.EMPTY));
+            return committed(journal(published, records), results);
+        }));
+    }
+
+    public List<BatchResult<Product>> reviewProducts(Collection<NewReview> reviews) {
+        return reviewProductsAsync(reviews).join();
+    }
+
+    /**
+     * Adds the reviews under one acquisition of the catalog write lock, grouped by product so each product
+     * is re-rated, re-indexed and re-packed once, and publishes them as one version journaled in one group
+     * commit. Results are in the order given; every review of a product holds the product as rated after
+     * the whole batch, and a review without a rating or comments fails on its own.
+     */
+    public CompletableFuture<List<BatchResult<Product>>> reviewProductsAsync(Collection<NewReview> reviews) {
+        long start = System.nanoTime();
+        List<NewReview> batch = List.copyOf(reviews);
+        return monitor.record(ProductManagerMonitor.Operation.REVIEW_PRODUCTS, start, writer.submitAll(() -> {
+            CatalogSnapshot snapshot = snapshot();
+            IntMap<ReviewGroup> byId = new IntMap<>();
+            List<ReviewGroup> groups = new ArrayList<>();
+            for (int i = 0; i < batch.size(); i++) {
+                int id = batch.get(i).getProductId();
+                ReviewGroup group = byId.get(id);
+                if (group == null) {
+                    group = new ReviewGroup(id);
+                    byId.put(id, group);
+                    groups.add(group);
+                }
+                group.add(i);
+            }
+            List<BatchResult<Product>> results = new ArrayList<>(Collections.nCopies(batch.size(), null));
+            List<Product> published = new ArrayList<>(groups.size());
+            List<ReviewArena> arenas = new ArrayList<>(groups.size());
+            List<String> records = new ArrayList<>(batch.size());
+            for (ReviewGroup group : groups) {
+                Product product = snapshot.product(group.id);
+                if (product == null) {
+                    group.fail(results, new ProductManagerException("Product with id " + group.id + " not found"));
+                    continue;
+                }
+                RatingHistogram histogram = segments.of(group.id).ratings.get(group.id);
+                Rating[] ratings = new Rating[group.size];
+                int[] comments = new int[group.size];
+                int accepted = 0;
+                for (int i = 0; i < group.size; i++) {
+                    NewReview review = batch.get(group.items[i]);
+                    if (review.getRating() == null || review.getComments() == null) {
+                        // checked before anything of the review is applied, so it fails alone
+                        results.set(group.items[i], BatchResult.failed(new ProductManagerException("Review of product with id "
+                                + group.id + " has no " + (review.getRating() == null ? "rating" : "comments"))));
+                        continue;
+                    }
+                    ratings[accepted] = review.getRating();
+                    comments[accepted] = snapshot.comments().encode(review.getComments());
+                    if (!lazyReviews) {
+                        reviewIndex.add(group.id, comments[accepted]);
+                    }
+                    histogram.add(review.getRating());
+                    records.add("R," + group.id + "," + formatReviewRecord(review.getRating(), review.getComments()));
+                    accepted++;
+                }
+                if (accepted == 0) {
+                    continue;
+                }
+                reportCache.invalidate(group.id, snapshot.versionOf(group.id));
+                Product reviewed = product.applyRating(histogram.getAverage());
+                sortedIndexes.remove(product);
+                sortedIndexes.add(reviewed);
+                published.add(reviewed);
+                arenas.add(snapshot.reviews(group.id)
+                        .with(Arrays.copyOf(ratings, accepted), Arrays.copyOf(comments, accepted)));
+                group.succeed(results, reviewed);
+            }
+            publish(published, arenas);
+            return committed(journal(published, records), results);
+        }));
+    }
+
+    /**
+     * Positions in a review batch of the reviews of one product.
+     */
+    private static class ReviewGroup {
+
+        private final int id;
+        private int[] items = new int[4];
+        private int size;
+
+        private ReviewGroup(int id) {
+            this.id = id;
+        }
+
+        private void add(int item) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = item;
+        }
+
+        private void succeed(List<BatchResult<Product>> results, Product product) {
+            for (int i = 0; i < size; i++) {
+                if (results.get(items[i]) == null) {
+                    results.set(items[i], BatchResult.of(product));
+                }
+            }
+        }
+
+        private void fail(List<BatchResult<Product>> results, ProductManagerException error) {
+            for (int i = 0; i < size; i++) {
+                results.set(items[i], BatchResult.failed(error));
+            }
+        }
+    }
+
+    public void printProducts(Predicate<Product> filter, Comparator<Product> sorter, String languageTag) {
+        printProducts(snapshot(), filter, sorter, languageTag);
+    }
+
+    void printProducts(CatalogSnapshot snapshot, Predicate<Product> filter, Comparator<Product> sorter, String languageTag) {
+        long start = System.nanoTime();
+        printLines(snapshot.getProducts(filter, sorter).iterator(), languageTag);
+        monitor.record(ProductManagerMonitor.Operation.PRINT_PRODUCTS, start);
+    }
+
+    public List<Product> findProducts(ProductQuery query) {
+        long start = System.nanoTime();
         try {
-            writeLock.lock();
-            product = new Drink(id, name, price, rating);
-            products.putIfAbsent(product, new ArrayList<>());
+            catalogReadLock.lockAll();
+            CatalogSnapshot snapshot = snapshot();
+            return sortedIndexes.query(query, snapshot::product);
         } finally {
-            writeLock.unlock();
+            catalogReadLock.unlockAll();
+            monitor.record(ProductManagerMonitor.Operation.FIND_PRODUCTS, start);
         }
-        return product;
     }
 
-    public Product reviewProduct(int id, Rating rating, String comments) {
+    public void printProducts(ProductQuery query, String languageTag) {
+        long start = System.nanoTime();
+        printLines(pages(query), languageTag);
+        monitor.record(ProductManagerMonitor.Operation.PRINT_PRODUCTS, start);
+    }
+
+    static void printLines(Iterator<Product> products, String languageTag) {
+        // other threads' println calls wait, as they did for the listing printed in one call
+        synchronized (System.out) {
+            Writer out = CatalogExport.buffered(new OutputStreamWriter(System.out, Charset.defaultCharset()));
+            try {
+                CatalogExport.writeProducts(products, ResourceFormatter.of(languageTag), out);
+                out.write(System.lineSeparator());
+                out.flush();
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error printing products " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Streams the products the query selects to the writer, one formatted line each; returns the last product
+     * written, the cursor of the next page, or null if there were none. The writer is flushed, not closed.
+     * Like {@link #findProducts(ProductQuery)} the pages follow the latest catalog; export from a
+     * {@link #snapshot()} to page through one version.
+     */
+    public Product exportProducts(ProductQuery query, String languageTag, Writer out) throws IOException {
+        return exportProducts(pages(query), languageTag, CatalogExport.buffered(out));
+    }
+
+    /**
+     * Streams the products the query selects to the channel as UTF-8 text, like
+     * {@link #exportProducts(ProductQuery, String, Writer)}. The channel is left open.
+     */
+    public Product exportProducts(ProductQuery query, String languageTag, WritableByteChannel out) throws IOException {
+        return exportProducts(pages(query), languageTag, CatalogExport.buffered(out));
+    }
+
+    Product exportProducts(Iterator<Product> products, String languageTag, Writer out) throws IOException {
+        long start = System.nanoTime();
         try {
-            writeLock.lock();
-            return reviewProduct(findProduct(id), rating, comments);
-        } catch (ProductManagerException e) {
-            logger.log(Level.INFO, e.getMessage());
+            Product last = CatalogExport.writeProducts(products, ResourceFormatter.of(languageTag), out);
+            out.flush();
+            return last;
         } finally {
-            writeLock.unlock();
+            monitor.record(ProductManagerMonitor.Operation.EXPORT_PRODUCTS, start);
         }
-        return null;
     }
 
-    private Product reviewProduct(Product product, Rating rating, String comments) {
-        List<Review> reviews = products.get(product);
-        products.remove(product, reviews);
-
-        reviews.add(new Review(rating, comments));
-
-        product = product.applyRating(
-                Rateable.convert(
-                        (int) Math.round(
-                                reviews.stream()
-                                        .mapToInt(r -> r.getRating().ordinal())
-                                        .average()
-                                        .orElse(0)
-                        )
-                )
-        );
-        products.put(product, reviews);
-        return product;
+    /**
+     * The query results fetched from the indexes a page at a time as they are iterated.
+     */
+    private Iterator<Product> pages(ProductQuery query) {
+        return new Iterator<>() {
+            private Iterator<Product> page = Collections.emptyIterator();
+            private Product last = query.getAfter();
+            private int offset = query.getOffset();
+            private int remaining = query.getLimit();
+            private boolean more = remaining > 0;
+
+            @Override
+            public boolean hasNext() {
+                if (!page.hasNext() && more) {
+                    int limit = Math.min(remaining, CatalogExport.PAGE_SIZE);
+                    List<Product> products = findProducts(query.page(last, offset, limit));
+                    offset = 0;
+                    remaining -= products.size();
+                    more = products.size() == limit && remaining > 0;
+                    page = products.iterator();
+                }
+                return page.hasNext();
+            }
+
+            @Override
+            public Product next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                last = page.next();
+                return last;
+            }
+        };
     }
 
-    public void printProducts(Predicate<Product> filter, Comparator<Product> sorter, String languageTag) {
+    /**
+     * Products whose reviews mention any word of the query, ignoring case and accents. The products with
+     * the most matching reviews per word come first, then the highest rated, then by id. With lazy review
+     * loading there is no index and a search reads every review.
+     */
+    public List<Product> searchReviews(String query, int limit) {
+        long start = System.nanoTime();
         try {
-            readLock.lock();
-            ResourceFormatter formatter = formatters.getOrDefault(languageTag, formatters.get("en-GB"));
-            StringBuilder sb = new StringBuilder();
-            products.keySet()
-                    .stream()
-                    .sorted(sorter)
-                    .filter(filter)
-                    .forEach(p -> sb.append(formatter.formatProduct(p) + '\n'));
-            System.out.println(sb);
+            CatalogSnapshot snapshot = snapshot();
+            IntMap<int[]> counts = new IntMap<>();
+            List<int[]> hits = new ArrayList<>();
+            ReviewIndex.Hits collect = (id, found) -> {
+                int[] count = counts.get(id);
+                if (count == null) {
+                    count = new int[]{id, 0};
+                    counts.put(id, count);
+                    hits.add(count);
+                }
+                count[1] += found;
+            };
+            if (lazyReviews) {
+                scanReviews(snapshot, query, collect);
+            } else {
+                reviewIndex.search(query, collect);
+            }
+            List<Map.Entry<Product, Integer>> ranked = new ArrayList<>(hits.size());
+            for (int[] count : hits) {
+                Product product = snapshot.product(count[0]);
+                if (product != null) {
+                    ranked.add(Map.entry(product, count[1]));
+                }
+            }
+            ranked.sort(Map.Entry.<Product, Integer>comparingByValue().reversed()
+                    .thenComparing(entry -> entry.getKey().getRating(), Comparator.reverseOrder())
+                    .thenComparingInt(entry -> entry.getKey().getId()));
+            return ranked.stream().limit(limit).map(Map.Entry::getKey).collect(Collectors.toList());
         } finally {
-            readLock.unlock();
+            monitor.record(ProductManagerMonitor.Operation.SEARCH_REVIEWS, start);
         }
     }
 
+    private void scanReviews(CatalogSnapshot snapshot, String query, ReviewIndex.Hits hits) {
+        Set<String> terms = ReviewIndex.terms(query);
+        if (terms.isEmpty()) {
+            return;
+        }
+        snapshot.forEach((product, reviews) -> {
+            if (reviews.size() == 0) {
+                return;
+            }
+            try {
+                int found = 0;
+                for (Review review : readReviews(snapshot, product.getId(), reviews, false)) {
+                    Set<String> words = ReviewIndex.terms(review.getComments());
+                    for (String term : terms) {
+                        if (words.contains(term)) {
+                            found++;
+                        }
+                    }
+                }
+                if (found > 0) {
+                    hits.hit(product.getId(), found);
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Error reading reviews " + e.getMessage());
+            }
+        });
+    }
+
     public Product findProduct(int id) throws ProductManagerException {
+        long start = System.nanoTime();
         try {
-            readLock.lock();
-            return products.keySet()
-                    .stream()
-                    .filter(p -> p.getId() == id)
-                    .findFirst().orElseThrow(() -> new ProductManagerException("Product with id " + id + " not found"));
+            return lookupProduct(id);
         } finally {
-            readLock.unlock();
+            monitor.record(ProductManagerMonitor.Operation.FIND_PRODUCT, start);
         }
     }
 
-    public void printProductReport(int id, String languageTag, String client) {
+    private Product lookupProduct(int id) throws ProductManagerException {
+        return snapshot().findProduct(id);
+    }
+
+    public CompletableFuture<Product> findProductAsync(int id) {
         try {
-            readLock.lock();
-            printProductReport(findProduct(id), languageTag, client);
+            return CompletableFuture.completedFuture(findProduct(id));
         } catch (ProductManagerException e) {
-            logger.log(Level.INFO, e.getMessage());
-        } catch (IOException e) {
-            logger.log(Level.SEVERE, "Error printing product report " + e.getMessage(), e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public RatingHistogram getRatingHistogram(int id) throws ProductManagerException {
+        ProductSegments.Segment segment = segments.of(id);
+        Lock readLock = segment.readLock();
+        try {
+            readLock.lock();
+            RatingHistogram histogram = segment.ratings.get(id);
+            if (histogram == null) {
+                throw new ProductManagerException("Product with id " + id + " not found");
+            }
+            return histogram.copy();
         } finally {
             readLock.unlock();
         }
     }
 
-    public void printProductReport(Product product, String languageTag, String client) throws IOException {
-        ResourceFormatter formatter = formatters.getOrDefault(languageTag, formatters.get("en-GB"));
-        Path productFile = reportsFolder.resolve(MessageFormat.format(config.getString("report.file"), product.getId(), client));
-
-        List<Review> reviews = products.get(product);
-        Collections.sort(reviews);
-
-        try (PrintWriter out = new PrintWriter(
-                new OutputStreamWriter(
-                        Files.newOutputStream(productFile, StandardOpenOption.CREATE),
-                        "UTF-8"
-                ))) {
-            StringBuilder sb = new StringBuilder();
-            sb.append(formatter.formatProduct(product));
-            sb.append("\n");
-
-            out.append(formatter.formatProduct(product) + System.lineSeparator());
-
-            if (reviews.isEmpty()) {
-                sb.append(formatter.getText("no.reviews") + '\n');
-                out.append(formatter.getText("no.reviews") + System.lineSeparator());
+    public void printProductReport(int id, String languageTag, String client) {
+        printProductReport(snapshot(), id, languageTag, client);
+    }
+
+    void printProductReport(CatalogSnapshot snapshot, int id, String languageTag, String client) {
+        try {
+            submitReport(snapshot, id, languageTag, client, true).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof ProductManagerException) {
+                logger.log(Level.INFO, e.getCause().getMessage());
             } else {
-                sb.append(reviews.stream()
-                        .map(r -> formatter.formatReview(r) + "\n")
-                        .collect(Collectors.joining())
-                );
-                out.append(reviews.stream()
-                        .map(r -> formatter.formatReview(r) + System.lineSeparator())
-                        .collect(Collectors.joining())
-                );
+                logger.log(Level.SEVERE, "Error printing product report " + e.getCause().getMessage(), e.getCause());
             }
-            System.out.println(sb);
         }
     }
 
-    private static class ResourceFormatter {
+    public CompletableFuture<Path> printProductReportAsync(int id, String languageTag, String client) {
+        return submitReport(snapshot(), id, languageTag, client, false);
+    }
 
-        private ResourceBundle resources;
-        private DateTimeFormatter dateFormat;
-        private NumberFormat moneyFormat;
+    CompletableFuture<Path> submitReport(CatalogSnapshot snapshot, int id, String languageTag, String client, boolean echo) {
+        long start = System.nanoTime();
+        return monitor.record(ProductManagerMonitor.Operation.PRINT_PRODUCT_REPORT, start,
+                writeReport(snapshot, id, languageTag, client, echo));
+    }
 
-        private ResourceFormatter(Locale locale) {
-            resources = ResourceBundle.getBundle("labs.pm.data.resources", locale);
-            dateFormat = DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT).localizedBy(locale);
-            moneyFormat = NumberFormat.getCurrencyInstance(locale);
+    private CompletableFuture<Path> writeReport(CatalogSnapshot snapshot, int id, String languageTag, String client, boolean echo) {
+        Product product;
+        try {
+            product = snapshot.findProduct(id);
+        } catch (ProductManagerException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        long version = snapshot.versionOf(id);
+        String report;
+        try {
+            report = renderReport(snapshot, product, languageTag);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (echo) {
+            System.out.println(report);
         }
+        return reportWriter.submit(reportFile(product, client), version, report);
+    }
 
-        private String formatProduct(Product product) {
-            return MessageFormat.format(
-                    getText("product"),
-                    product.getName(),
-                    moneyFormat.format(product.getPrice()),
-                    product.getRating().getStars(),
-                    dateFormat.format(product.getBestBefore()));
+    public void printProductReport(Product product, String languageTag, String client) throws IOException {
+        long start = System.nanoTime();
+        CatalogSnapshot snapshot = snapshot();
+        long version = snapshot.versionOf(product.getId());
+        String report = renderReport(snapshot, product, languageTag);
+        try {
+            reportWriter.submit(reportFile(product, client), version, report).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        } finally {
+            monitor.record(ProductManagerMonitor.Operation.PRINT_PRODUCT_REPORT, start);
         }
+        System.out.println(report);
+    }
 
-        private String formatReview(Review review) {
-            return MessageFormat.format(getText("review"),
-                    review.getRating().getStars(), review.getComments());
+    private Path reportFile(Product product, String client) {
+        return reportsFolder.resolve(MessageFormat.format(config.getString("report.file"), String.valueOf(product.getId()), client));
+    }
+
+    private String renderReport(CatalogSnapshot snapshot, Product product, String languageTag) throws IOException {
+        if (!ResourceFormatter.getSupportedLocales().contains(languageTag)) {
+            languageTag = ResourceFormatter.DEFAULT_LANGUAGE_TAG;
+        }
+        ReviewArena reviews = snapshot.reviews(product.getId());
+        long version = snapshot.versionOf(product.getId());
+        String report = reportCache.get(product.getId(), version, languageTag);
+        if (report == null) {
+            StringBuilder sb = new StringBuilder(128 + reviews.size() * 64);
+            report = formatReport(snapshot, product, reviews, ResourceFormatter.of(languageTag), sb, true).toString();
+            reportCache.put(product.getId(), version, languageTag, report);
         }
+        return report;
+    }
 
-        private String getText(String key) {
-            return resources.getString(key);
+    private StringBuilder formatReport(CatalogSnapshot snapshot, Product product, ReviewArena reviews,
+                                       ResourceFormatter formatter, StringBuilder sb, boolean cache) throws IOException {
+        formatter.formatProduct(product, sb).append(System.lineSeparator());
+        if (reviews.size() == 0) {
+            sb.append(formatter.getText("no.reviews")).append(System.lineSeparator());
+        } else if (reviews.filed() == 0) {
+            for (int i = 0; i < reviews.held(); i++) {
+                formatter.formatReview(reviews.rating(i), snapshot.comments().decode(reviews.comment(i)), sb)
+                        .append(System.lineSeparator());
+            }
+        } else {
+            for (Review review : readReviews(snapshot, product.getId(), reviews, cache)) {
+                formatter.formatReview(review.getRating(), review.getComments(), sb).append(System.lineSeparator());
+            }
         }
+        return sb;
     }
 
-    public Map<String, String> getDiscounts(String languageTag) {
+    /**
+     * Every review in the arena, reading those it leaves in the product's reviews file through the review
+     * cache; a pass over the whole catalog uses the cached reviews but doesn't add to them.
+     */
+    List<Review> readReviews(CatalogSnapshot snapshot, int id, ReviewArena reviews, boolean cache) throws IOException {
+        List<Review> held = reviews.toReviews(snapshot.comments());
+        if (reviews.filed() == 0) {
+            return held;
+        }
+        List<Review> filed = reviewCache.get(id, reviews.filed());
+        if (filed == null) {
+            filed = Collections.unmodifiableList(reviewFiles.loadReviews(id, reviews.filed()));
+            if (cache) {
+                reviewCache.put(id, reviews.filed(), filed);
+            }
+        }
+        if (held.isEmpty()) {
+            return filed;
+        }
+        // the reviews added since come after the filed reviews of the same rating, as if appended to the file
+        List<Review> all = new ArrayList<>(filed.size() + held.size());
+        int next = 0;
+        for (Review review : held) {
+            while (next < filed.size() && filed.get(next).compareTo(review) <= 0) {
+                all.add(filed.get(next++));
+            }
+            all.add(review);
+        }
+        all.addAll(filed.subList(next, filed.size()));
+        return all;
+    }
+
+    /**
+     * Writes the report file of every product in one pass over the latest version; returns the number written.
+     */
+    public int exportProductReports(String languageTag, String client) throws IOException {
+        return exportProductReports(snapshot(), languageTag, client);
+    }
+
+    /**
+     * Renders each report into one reused buffer and writes it through a file channel, bypassing the report
+     * cache and writer queue that suit single reports; reports already cached are written as they are.
+     */
+    int exportProductReports(CatalogSnapshot snapshot, String languageTag, String client) throws IOException {
+        long start = System.nanoTime();
+        String tag = ResourceFormatter.getSupportedLocales().contains(languageTag)
+                ? languageTag : ResourceFormatter.DEFAULT_LANGUAGE_TAG;
+        ResourceFormatter formatter = ResourceFormatter.of(tag);
+        CatalogExport.ReportFiles files = new CatalogExport.ReportFiles();
+        int[] count = {0};
         try {
-            readLock.lock();
-            ResourceFormatter formatter = formatters.getOrDefault(languageTag, formatters.get("en-GB"));
-            return products.keySet().stream()
-                    .collect(
-                            Collectors.groupingBy(
-                                    product -> product.getRating().getStars(),
-                                    Collectors.collectingAndThen(
-                                            Collectors.summingDouble(
-                                                    product -> product.getDiscount().doubleValue()),
-                                            discount -> formatter.moneyFormat.format(discount)
-                                    )
-                            )
-                    );
+            snapshot.forEach((product, reviews) -> {
+                StringBuilder report = files.report();
+                String cached = reportCache.get(product.getId(), snapshot.versionOf(product.getId()), tag);
+                try {
+                    if (cached != null) {
+                        report.append(cached);
+                    } else {
+                        formatReport(snapshot, product, reviews, formatter, report, false);
+                    }
+                    files.write(reportFile(product, client));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                count[0]++;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
         } finally {
-            readLock.unlock();
+            monitor.record(ProductManagerMonitor.Operation.EXPORT_PRODUCT_REPORTS, start);
         }
+        return count[0];
+    }
+
+    public Map<String, Long> getReportWriterStatistics() {
+        return reportWriter.getStatistics();
+    }
+
+    public Map<String, Long> getReviewIndexStatistics() {
+        ReviewIndex index = reviewIndex;
+        return Map.of("terms", (long) index.getTermCount(),
+                "postings", index.getPostingCount(),
+                "bytes", index.getBytes());
+    }
+
+    /**
+     * Reload cycles of the data folder watcher, with their lag from the first file change to the new
+     * version and the products they touched; empty unless data.watch is enabled.
+     */
+    public Map<String, Long> getDataWatcherStatistics() {
+        return watcher == null ? Map.of() : watcher.getStatistics();
+    }
+
+    public ProductManagerMXBean getMonitor() {
+        return monitor;
+    }
+
+    int getCatalogSize() {
+        return snapshot().size();
+    }
+
+    long getTotalReviews() {
+        return snapshot().getTotalReviews();
+    }
+
+    public Map<String, Long> getWriterStatistics() {
+        return Map.of("applied", writer.getApplied(),
+                "batches", writer.getBatches(),
+                "queueDepth", (long) writer.getQueueDepth());
+    }
+
+    public Map<String, Long> getReportCacheStatistics() {
+        return Map.of("hits", reportCache.getHits(),
+                "misses", reportCache.getMisses(),
+                "evictions", reportCache.getEvictions(),
+                "size", (long) reportCache.size());
+    }
+
+    /**
+     * Reviews read from their files and kept with lazy review loading; empty with eager loading.
+     */
+    public Map<String, Long> getReviewCacheStatistics() {
+        if (!lazyReviews) {
+            return Map.of();
+        }
+        return Map.of("hits", reviewCache.getHits(),
+                "misses", reviewCache.getMisses(),
+                "evictions", reviewCache.getEvictions(),
+                "size", (long) reviewCache.size(),
+                "bytes", reviewCache.getBytes());
+    }
+
+    public Map<String, String> getDiscounts(String languageTag) {
+        return getDiscounts(snapshot(), languageTag);
+    }
+
+    Map<String, String> getDiscounts(CatalogSnapshot snapshot, String languageTag) {
+        long start = System.nanoTime();
+        if (!ResourceFormatter.getSupportedLocales().contains(languageTag)) {
+            languageTag = ResourceFormatter.DEFAULT_LANGUAGE_TAG;
+        }
+        ResourceFormatter formatter = ResourceFormatter.of(languageTag);
+        Map<String, String> discounts = snapshot.discounts().format(languageTag, Drink.isHappyHour(LocalTime.now()),
+                formatter::formatMoney);
+        monitor.record(ProductManagerMonitor.Operation.GET_DISCOUNTS, start);
+        return discounts;
+    }
+
+    public CompletableFuture<Map<String, String>> getDiscountsAsync(String languageTag) {
+        return CompletableFuture.completedFuture(getDiscounts(languageTag));
     }
 }
@@ -0,0 +1,51 @@
+package labs.pm.data;
+
+import java.util.Map;
+
+/**
+ * Operational view of a ProductManager, registered as labs.pm:type=ProductManager,id=N.
+ */
+public interface ProductManagerMXBean {
+
+    int getCatalogSize();
+
+    long getTotalReviews();
+
+    Map<String, Long> getOperationCounts();
+
+    Map<String, Map<String, Long>> getOperationLatencies();
+
+    long getReadLockWaits();
+
+    long getReadLockWaitMicros();
+
+    long getWriteLockWaits();
+
+    long getWriteLockWaitMicros();
+
+    int getLockQueueLength();
+
+    int getWriterQueueDepth();
+
+    long getLastLoadMillis();
+
+    long getLastDumpMillis();
+
+    long getLastRestoreMillis();
+
+    long getReportBytesWritten();
+
+    Map<String, Long> getReportWriterStatistics();
+
+    Map<String, Long> getReportCacheStatistics();
+
+    Map<String, Long> getWriterStatistics();
+
+    Map<String, Long> getDataWatcherStatistics();
+
+    Map<String, Long> getReviewIndexStatistics();
+
+    Map<String, Long> getReviewCacheStatistics();
+
+    void resetStatistics();
+}
@@ -0,0 +1,201 @@
+package labs.pm.data;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects per-operation statistics for one ProductManager and publishes them over JMX.
+ */
+class ProductManagerMonitor implements ProductManagerMXBean {
+
+    private static final Logger logger = Logger.getLogger(ProductManagerMonitor.class.getName());
+    private static final AtomicInteger instances = new AtomicInteger();
+
+    enum Operation {
+        CREATE_PRODUCT("createProduct"),
+        REVIEW_PRODUCT("reviewProduct"),
+        CREATE_PRODUCTS("createProducts"),
+        REVIEW_PRODUCTS("reviewProducts"),
+        FIND_PRODUCT("findProduct"),
+        FIND_PRODUCTS("findProducts"),
+        SEARCH_REVIEWS("searchReviews"),
+        PRINT_PRODUCTS("printProducts"),
+        PRINT_PRODUCT_REPORT("printProductReport"),
+        EXPORT_PRODUCTS("exportProducts"),
+        EXPORT_PRODUCT_REPORTS("exportProductReports"),
+        GET_DISCOUNTS("getDiscounts"),
+        LOAD_ALL_DATA("loadAllData"),
+        DUMP_DATA("dumpData"),
+        RESTORE_DATA("restoreData"),
+        COMPACT_JOURNAL("compactJournal");
+
+        private final String label;
+
+        Operation(String label) {
+            this.label = label;
+        }
+    }
+
+    private final ProductManager pm;
+    private final ProductSegments segments;
+    private final Map<Operation, OperationStats> operations = new EnumMap<>(Operation.class);
+    private ObjectName name;
+
+    ProductManagerMonitor(ProductManager pm, ProductSegments segments) {
+        this.pm = pm;
+        this.segments = segments;
+        for (Operation operation : Operation.values()) {
+            operations.put(operation, new OperationStats());
+        }
+    }
+
+    void record(Operation operation, long start) {
+        operations.get(operation).record(System.nanoTime() - start);
+    }
+
+    <T> CompletableFuture<T> record(Operation operation, long start, CompletableFuture<T> future) {
+        future.whenComplete((value, error) -> record(operation, start));
+        return future;
+    }
+
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            name = new ObjectName("labs.pm:type=ProductManager,id=" + instances.incrementAndGet());
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Error registering ProductManager MBean " + e.getMessage());
+            name = null;
+        }
+    }
+
+    void unregister() {
+        if (name != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+            } catch (JMException e) {
+                logger.log(Level.WARNING, "Error unregistering ProductManager MBean " + e.getMessage());
+            }
+            name = null;
+        }
+    }
+
+    @Override
+    public int getCatalogSize() {
+        return pm.getCatalogSize();
+    }
+
+    @Override
+    public long getTotalReviews() {
+        return pm.getTotalReviews();
+    }
+
+    @Override
+    public Map<String, Long> getOperationCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        operations.forEach((operation, stats) -> counts.put(operation.label, stats.getCount()));
+        return counts;
+    }
+
+    @Override
+    public Map<String, Map<String, Long>> getOperationLatencies() {
+        Map<String, Map<String, Long>> latencies = new LinkedHashMap<>();
+        operations.forEach((operation, stats) -> latencies.put(operation.label, stats.toMap()));
+        return latencies;
+    }
+
+    @Override
+    public long getReadLockWaits() {
+        return segments.getReadWaits();
+    }
+
+    @Override
+    public long getReadLockWaitMicros() {
+        return segments.getReadWaitNanos() / 1000;
+    }
+
+    @Override
+    public long getWriteLockWaits() {
+        return segments.getWriteWaits();
+    }
+
+    @Override
+    public long getWriteLockWaitMicros() {
+        return segments.getWriteWaitNanos() / 1000;
+    }
+
+    @Override
+    public int getLockQueueLength() {
+        return segments.getQueueLength();
+    }
+
+    @Override
+    public int getWriterQueueDepth() {
+        return pm.getWriterStatistics().get("queueDepth").intValue();
+    }
+
+    @Override
+    public long getLastLoadMillis() {
+        return operations.get(Operation.LOAD_ALL_DATA).getLastNanos() / 1_000_000;
+    }
+
+    @Override
+    public long getLastDumpMillis() {
+        return operations.get(Operation.DUMP_DATA).getLastNanos() / 1_000_000;
+    }
+
+    @Override
+    public long getLastRestoreMillis() {
+        return operations.get(Operation.RESTORE_DATA).getLastNanos() / 1_000_000;
+    }
+
+    @Override
+    public long getReportBytesWritten() {
+        return pm.getReportWriterStatistics().get("bytesWritten");
+    }
+
+    @Override
+    public Map<String, Long> getReportWriterStatistics() {
+        return pm.getReportWriterStatistics();
+    }
+
+    @Override
+    public Map<String, Long> getDataWatcherStatistics() {
+        return pm.getDataWatcherStatistics();
+    }
+
+    @Override
+    public Map<String, Long> getReviewIndexStatistics() {
+        return pm.getReviewIndexStatistics();
+    }
+
+    @Override
+    public Map<String, Long> getReviewCacheStatistics() {
+        return pm.getReviewCacheStatistics();
+    }
+
+    @Override
+    public Map<String, Long> getReportCacheStatistics() {
+        return pm.getReportCacheStatistics();
+    }
+
+    @Override
+    public Map<String, Long> getWriterStatistics() {
+        return pm.getWriterStatistics();
+    }
+
+    @Override
+    public void resetStatistics() {
+        operations.values().forEach(OperationStats::reset);
+        segments.resetWaits();
+    }
+}
@@ -0,0 +1,173 @@
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Comparator;
+
+/**
+ * Range query over the sorted product indexes. Results are ordered by one indexed key, rating ties by
+ * price, with ties broken by product id, so a page of k products costs O(log n + k) when the range is on
+ * the ordering key, or on the price when ordered by rating.
+ * Only {@link Food} has a stored best before date, so best before ranges and ordering select Food only.
+ */
+public class ProductQuery {
+
+    public enum Order {
+        RATING, PRICE, BEST_BEFORE
+    }
+
+    private final Order order;
+    private final boolean descending;
+    private Rating minRating;
+    private Rating maxRating;
+    private BigDecimal minPrice;
+    private BigDecimal maxPrice;
+    private LocalDate minBestBefore;
+    private LocalDate maxBestBefore;
+    private Product after;
+    private int offset;
+    private int limit = Integer.MAX_VALUE;
+
+    private ProductQuery(Order order, boolean descending) {
+        this.order = order;
+        this.descending = descending;
+    }
+
+    public static ProductQuery orderBy(Order order) {
+        return new ProductQuery(order, false);
+    }
+
+    public static ProductQuery orderByDescending(Order order) {
+        return new ProductQuery(order, true);
+    }
+
+    public ProductQuery ratingBetween(Rating min, Rating max) {
+        minRating = min;
+        maxRating = max;
+        return this;
+    }
+
+    public ProductQuery priceBetween(BigDecimal min, BigDecimal max) {
+        minPrice = min;
+        maxPrice = max;
+        return this;
+    }
+
+    public ProductQuery bestBeforeBetween(LocalDate min, LocalDate max) {
+        minBestBefore = min;
+        maxBestBefore = max;
+        return this;
+    }
+
+    /**
+     * Continues after the last product of a previous page, which costs O(log n) unlike an offset.
+     */
+    public ProductQuery after(Product cursor) {
+        after = cursor;
+        return this;
+    }
+
+    public ProductQuery offset(int offset) {
+        this.offset = offset;
+        return this;
+    }
+
+    public ProductQuery limit(int limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * The same ranges and order, for one page of the results.
+     */
+    ProductQuery page(Product after, int offset, int limit) {
+        ProductQuery page = new ProductQuery(order, descending);
+        page.minRating = minRating;
+        page.maxRating = maxRating;
+        page.minPrice = minPrice;
+        page.maxPrice = maxPrice;
+        page.minBestBefore = minBestBefore;
+        page.maxBestBefore = maxBestBefore;
+        page.after = after;
+        page.offset = offset;
+        page.limit = limit;
+        return page;
+    }
+
+    Order getOrder() {
+        return order;
+    }
+
+    boolean isDescending() {
+        return descending;
+    }
+
+    Rating getMinRating() {
+        return minRating;
+    }
+
+    Rating getMaxRating() {
+        return maxRating;
+    }
+
+    BigDecimal getMinPrice() {
+        return minPrice;
+    }
+
+    BigDecimal getMaxPrice() {
+        return maxPrice;
+    }
+
+    LocalDate getMinBestBefore() {
+        return minBestBefore;
+    }
+
+    LocalDate getMaxBestBefore() {
+        return maxBestBefore;
+    }
+
+    Product getAfter() {
+        return after;
+    }
+
+    int getOffset() {
+        return offset;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    /**
+     * The result order, for scanning products without the indexes.
+     */
+    Comparator<Product> comparator() {
+        Comparator<Product> comparator;
+        switch (order) {
+            case PRICE:
+                comparator = Comparator.comparing(Product::getPrice);
+                break;
+            case BEST_BEFORE:
+                comparator = Comparator.comparing(Product::getBestBefore);
+                break;
+            default:
+                comparator = Comparator.comparing(Product::getRating).thenComparing(Product::getPrice);
+        }
+        comparator = comparator.thenComparingInt(Product::getId);
+        return descending ? comparator.reversed() : comparator;
+    }
+
+    boolean matches(Product product) {
+        if (minRating != null && product.getRating().compareTo(minRating) < 0) return false;
+        if (maxRating != null && product.getRating().compareTo(maxRating) > 0) return false;
+        if (minPrice != null && product.getPrice().compareTo(minPrice) < 0) return false;
+        if (maxPrice != null && product.getPrice().compareTo(maxPrice) > 0) return false;
+        if (minBestBefore != null || maxBestBefore != null) {
+            if (!(product instanceof Food)) return false;
+            LocalDate bestBefore = product.getBestBefore();
+            if (minBestBefore != null && bestBefore.isBefore(minBestBefore)) return false;
+            if (maxBestBefore != null && bestBefore.isAfter(maxBestBefore)) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,201 @@
+package labs.pm.data;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Lock stripes chosen by product id, each guarding the rating histograms of its products, so writes of
+ * different stripes don't hold each other up. Catalog-wide operations take every stripe in index order.
+ * Products and reviews are read from catalog snapshots, without these locks.
+ */
+class ProductSegments {
+
+    class Segment {
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Lock readLock = new TimedLock(lock.readLock(), readWaits, readWaitNanos);
+        private final Lock writeLock = new TimedLock(lock.writeLock(), writeWaits, writeWaitNanos);
+
+        IntMap<RatingHistogram> ratings = new IntMap<>();
+
+        Lock readLock() {
+            return readLock;
+        }
+
+        Lock writeLock() {
+            return writeLock;
+        }
+
+        void clear() {
+            ratings = new IntMap<>();
+        }
+    }
+
+    private final LongAdder readWaits = new LongAdder();
+    private final LongAdder readWaitNanos = new LongAdder();
+    private final LongAdder writeWaits = new LongAdder();
+    private final LongAdder writeWaitNanos = new LongAdder();
+
+    private final Segment[] segments;
+    private final int mask;
+    private final AllStripes readLocks;
+    private final AllStripes writeLocks;
+
+    ProductSegments(int stripes) {
+        int size = Integer.highestOneBit(Math.max(1, stripes) * 2 - 1);
+        segments = new Segment[size];
+        for (int i = 0; i < size; i++) {
+            segments[i] = new Segment();
+        }
+        mask = size - 1;
+        readLocks = new AllStripes(Segment::readLock);
+        writeLocks = new AllStripes(Segment::writeLock);
+    }
+
+    Segment of(int id) {
+        int h = id * 0x9E3779B9;
+        return segments[(h ^ (h >>> 16)) & mask];
+    }
+
+    void forEach(Consumer<Segment> action) {
+        for (Segment segment : segments) {
+            action.accept(segment);
+        }
+    }
+
+    AllStripes readLocks() {
+        return readLocks;
+    }
+
+    AllStripes writeLocks() {
+        return writeLocks;
+    }
+
+    long getReadWaits() {
+        return readWaits.sum();
+    }
+
+    long getReadWaitNanos() {
+        return readWaitNanos.sum();
+    }
+
+    long getWriteWaits() {
+        return writeWaits.sum();
+    }
+
+    long getWriteWaitNanos() {
+        return writeWaitNanos.sum();
+    }
+
+    /**
+     * Estimated number of threads waiting on any stripe.
+     */
+    int getQueueLength() {
+        int length = 0;
+        for (Segment segment : segments) {
+            length += segment.lock.getQueueLength();
+        }
+        return length;
+    }
+
+    void resetWaits() {
+        readWaits.reset();
+        readWaitNanos.reset();
+        writeWaits.reset();
+        writeWaitNanos.reset();
+    }
+
+    /**
+     * Counts acquisitions that had to wait and how long they waited; uncontended ones cost one tryLock.
+     */
+    private static class TimedLock implements Lock {
+
+        private final Lock lock;
+        private final LongAdder waits;
+        private final LongAdder waitNanos;
+
+        private TimedLock(Lock lock, LongAdder waits, LongAdder waitNanos) {
+            this.lock = lock;
+            this.waits = waits;
+            this.waitNanos = waitNanos;
+        }
+
+        @Override
+        public void lock() {
+            if (!lock.tryLock()) {
+                long start = System.nanoTime();
+                lock.lock();
+                waited(start);
+            }
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            if (!lock.tryLock()) {
+                long start = System.nanoTime();
+                lock.lockInterruptibly();
+                waited(start);
+            }
+        }
+
+        @Override
+        public boolean tryLock() {
+            return lock.tryLock();
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            if (lock.tryLock()) {
+                return true;
+            }
+            long start = System.nanoTime();
+            boolean locked = lock.tryLock(time, unit);
+            waited(start);
+            return locked;
+        }
+
+        private void waited(long start) {
+            waits.increment();
+            waitNanos.add(System.nanoTime() - start);
+        }
+
+        @Override
+        public void unlock() {
+            lock.unlock();
+        }
+
+        @Override
+        public Condition newCondition() {
+            return lock.newCondition();
+        }
+    }
+
+    /**
+     * Every stripe's read or write lock, taken in index order and released in reverse.
+     */
+    class AllStripes {
+
+        private final Function<Segment, Lock> stripe;
+
+        private AllStripes(Function<Segment, Lock> stripe) {
+            this.stripe = stripe;
+        }
+
+        void lockAll() {
+            for (Segment segment : segments) {
+                stripe.apply(segment).lock();
+            }
+        }
+
+        void unlockAll() {
+            for (int i = segments.length - 1; i >= 0; i--) {
+                stripe.apply(segments[i]).unlock();
+            }
+        }
+    }
+}
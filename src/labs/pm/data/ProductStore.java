@@ -0,0 +1,33 @@
+package labs.pm.data;
+
+import java.util.function.Consumer;
+
+/**
+ * The products of a catalog snapshot as loaded, by id. Products are immutable, so a store may hand out a new instance per call.
+ */
+interface ProductStore {
+
+    Product get(int id);
+
+    boolean contains(int id);
+
+    /**
+     * Adds the product or replaces the one with the same id.
+     */
+    void put(Product product);
+
+    int size();
+
+    void forEach(Consumer<? super Product> action);
+
+    static ProductStore of(String type) {
+        switch (type) {
+            case "objects":
+                return new ObjectProductStore();
+            case "columns":
+                return new ColumnarProductStore();
+            default:
+                throw new IllegalArgumentException("Unknown product store " + type);
+        }
+    }
+}
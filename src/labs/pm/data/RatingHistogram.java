@@ -0,0 +1,76 @@
+package labs.pm.data;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Running count of reviews per rating, indexed by {@link Rating#ordinal()},
+ * so the average rating of a product is kept up to date in constant time.
+ */
+public class RatingHistogram {
+
+    private static final Rating[] RATINGS = Rating.values();
+
+    private final long[] counts;
+    private long total;
+    private long sum;
+
+    RatingHistogram() {
+        counts = new long[RATINGS.length];
+    }
+
+    private RatingHistogram(RatingHistogram other) {
+        counts = other.counts.clone();
+        total = other.total;
+        sum = other.sum;
+    }
+
+    void add(Rating rating) {
+        counts[rating.ordinal()]++;
+        total++;
+        sum += rating.ordinal();
+    }
+
+    RatingHistogram copy() {
+        return new RatingHistogram(this);
+    }
+
+    public long getCount(Rating rating) {
+        return counts[rating.ordinal()];
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public double getMean() {
+        return total == 0 ? 0 : (double) sum / total;
+    }
+
+    public Rating getAverage() {
+        return Rateable.convert((int) Math.round(getMean()));
+    }
+
+    public Map<Rating, Long> toMap() {
+        Map<Rating, Long> breakdown = new EnumMap<>(Rating.class);
+        for (Rating rating : RATINGS) {
+            breakdown.put(rating, counts[rating.ordinal()]);
+        }
+        return breakdown;
+    }
+
+    static RatingHistogram of(Iterable<Review> reviews) {
+        RatingHistogram histogram = new RatingHistogram();
+        reviews.forEach(review -> histogram.add(review.getRating()));
+        return histogram;
+    }
+
+    @Override
+    public String toString() {
+        return "RatingHistogram{" +
+                "counts=" + Arrays.toString(counts) +
+                ", total=" + total +
+                '}';
+    }
+}
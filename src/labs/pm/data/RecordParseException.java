@@ -0,0 +1,23 @@
+package labs.pm.data;
+
+public class RecordParseException extends ProductManagerException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int column;
+    private final String record;
+
+    public RecordParseException(String message, int column, CharSequence record) {
+        super(message + " at column " + (column + 1) + ": " + record);
+        this.column = column;
+        this.record = record.toString();
+    }
+
+    public int getColumn() {
+        return column;
+    }
+
+    public String getRecord() {
+        return record;
+    }
+}
@@ -0,0 +1,162 @@
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+
+/**
+ * Parses the {@code type,id,name,price,rating[,bestBefore]} product and {@code rating,comments} review layouts
+ * straight from the characters of a line. Prices are read as unscaled digits so no double rounding happens.
+ * Instances keep a cursor and are not thread-safe.
+ */
+class RecordParser {
+
+    private static final char SEPARATOR = ',';
+
+    private CharSequence record;
+    private int position;
+    private int fieldStart;
+
+    Product parseProduct(CharSequence line) throws RecordParseException {
+        reset(line);
+        char type = nextFieldEnd() == 1 ? record.charAt(0) : 0;
+        if (type != 'D' && type != 'F') {
+            throw error("Unknown product type", 0);
+        }
+        int id = parseInt(nextFieldEnd());
+        String name = record.subSequence(position, nextFieldEnd()).toString();
+        if (name.isEmpty()) {
+            throw error("Missing product name", fieldStart);
+        }
+        BigDecimal price = parsePrice(nextFieldEnd());
+        Rating rating = Rateable.convert(parseInt(nextFieldEnd()));
+        if (type == 'D') {
+            return new Drink(id, name, price, rating);
+        }
+        if (position > record.length()) {
+            throw error("Missing best before date", record.length());
+        }
+        return new Food(id, name, price, rating, parseDate(nextFieldEnd()));
+    }
+
+    Review parseReview(CharSequence line) throws RecordParseException {
+        reset(line);
+        Rating rating = Rateable.convert(parseInt(nextFieldEnd()));
+        if (position > record.length()) {
+            throw error("Missing review comments", record.length());
+        }
+        // the comments run to the end of the line and may contain separators
+        return new Review(rating, record.subSequence(position, record.length()).toString());
+    }
+
+    /**
+     * The rating of a review line that parseReview accepts, without copying its comments.
+     */
+    Rating parseRating(CharSequence line) throws RecordParseException {
+        reset(line);
+        Rating rating = Rateable.convert(parseInt(nextFieldEnd()));
+        if (position > record.length()) {
+            throw error("Missing review comments", record.length());
+        }
+        return rating;
+    }
+
+    private void reset(CharSequence line) {
+        record = line;
+        position = 0;
+    }
+
+    /**
+     * Moves the cursor past the next separator and returns where the current field ends.
+     */
+    private int nextFieldEnd() throws RecordParseException {
+        if (position > record.length()) {
+            throw error("Missing field", record.length());
+        }
+        fieldStart = position;
+        int end = position;
+        while (end < record.length() && record.charAt(end) != SEPARATOR) {
+            end++;
+        }
+        position = end + 1;
+        return end;
+    }
+
+    private int parseInt(int end) throws RecordParseException {
+        int start = fieldStart;
+        if (start == end) {
+            throw error("Missing number", start);
+        }
+        boolean negative = record.charAt(start) == '-';
+        long value = 0;
+        for (int i = negative ? start + 1 : start; i < end; i++) {
+            int digit = record.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw error("Invalid digit", i);
+            }
+            value = value * 10 + digit;
+            if (value > Integer.MAX_VALUE + 1L) {
+                throw error("Number out of range", start);
+            }
+        }
+        if ((!negative && value > Integer.MAX_VALUE) || (negative && end == start + 1)) {
+            throw error("Invalid number", start);
+        }
+        return (int) (negative ? -value : value);
+    }
+
+    private BigDecimal parsePrice(int end) throws RecordParseException {
+        int start = fieldStart;
+        if (start == end) {
+            throw error("Missing price", start);
+        }
+        long unscaled = 0;
+        int scale = -1;
+        for (int i = start; i < end; i++) {
+            char c = record.charAt(i);
+            if (c == '.' && scale < 0) {
+                scale = 0;
+            } else if (c >= '0' && c <= '9') {
+                if (unscaled > (Long.MAX_VALUE - 9) / 10) {
+                    // too many digits for a long, let BigDecimal handle it
+                    return new BigDecimal(record.subSequence(start, end).toString());
+                }
+                unscaled = unscaled * 10 + (c - '0');
+                if (scale >= 0) {
+                    scale++;
+                }
+            } else {
+                throw error("Invalid price", i);
+            }
+        }
+        return BigDecimal.valueOf(unscaled, Math.max(scale, 0));
+    }
+
+    private LocalDate parseDate(int end) throws RecordParseException {
+        int start = fieldStart;
+        if (end - start != 10 || record.charAt(start + 4) != '-' || record.charAt(start + 7) != '-') {
+            throw error("Invalid date, expected yyyy-MM-dd", start);
+        }
+        try {
+            return LocalDate.of(digits(start, 4), digits(start + 5, 2), digits(start + 8, 2));
+        } catch (DateTimeException e) {
+            throw error(e.getMessage(), start);
+        }
+    }
+
+    private int digits(int start, int count) throws RecordParseException {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = record.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw error("Invalid digit", i);
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private RecordParseException error(String message, int column) {
+        return new RecordParseException(message, column, record);
+    }
+}
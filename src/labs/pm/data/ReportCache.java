@@ -0,0 +1,112 @@
+package labs.pm.data;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of rendered product reports keyed by product id, product version and language tag.
+ */
+class ReportCache {
+
+    private static class Key {
+
+        private final int id;
+        private final long version;
+        private final String languageTag;
+
+        private Key(int id, long version, String languageTag) {
+            this.id = id;
+            this.version = version;
+            this.languageTag = languageTag;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return id == key.id && version == key.version && languageTag.equals(key.languageTag);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(id, version, languageTag);
+        }
+    }
+
+    private final int capacity;
+    private final Map<Key, String> reports;
+    private final Set<String> languageTags = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    ReportCache(int capacity) {
+        this.capacity = capacity;
+        reports = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, String> eldest) {
+                if (size() > ReportCache.this.capacity) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    String get(int id, long version, String languageTag) {
+        String report;
+        synchronized (reports) {
+            report = reports.get(new Key(id, version, languageTag));
+        }
+        (report == null ? misses : hits).increment();
+        return report;
+    }
+
+    void put(int id, long version, String languageTag, String report) {
+        if (capacity > 0) {
+            languageTags.add(languageTag);
+            synchronized (reports) {
+                reports.put(new Key(id, version, languageTag), report);
+            }
+        }
+    }
+
+    void invalidate(int id, long version) {
+        synchronized (reports) {
+            for (String languageTag : languageTags) {
+                reports.remove(new Key(id, version, languageTag));
+            }
+        }
+    }
+
+    void clear() {
+        synchronized (reports) {
+            reports.clear();
+        }
+    }
+
+    int size() {
+        synchronized (reports) {
+            return reports.size();
+        }
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+}
@@ -0,0 +1,207 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes rendered reports on a dedicated I/O executor, one write at a time per file. A report queued for a
+ * file that is still waiting to be written replaces the queued content, so each file is written once per
+ * burst of requests. A report of an older product version than the newest one queued or written for its
+ * file is dropped, and one the file already holds is not written again.
+ */
+class ReportWriter {
+
+    private static class Job {
+
+        private final CompletableFuture<Path> done = new CompletableFuture<>();
+        private final long queuedAt = System.nanoTime();
+        private long version;
+        private String report;
+
+        private Job(long version, String report) {
+            this.version = version;
+            this.report = report;
+        }
+    }
+
+    /**
+     * A report file: the job waiting for it, the job being written and the last report written to it.
+     */
+    private static class Slot {
+
+        private final Path file;
+        private Job queued;
+        private Job writing;
+        private long version = Long.MIN_VALUE;
+        private int hash;
+        private long size = -1;
+
+        private Slot(Path file) {
+            this.file = file;
+        }
+    }
+
+    private final Map<Path, Slot> slots = new ConcurrentHashMap<>();
+    private final ExecutorService io;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder unchanged = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+    private final LongAdder queueNanos = new LongAdder();
+    private final LongAdder queueDepth = new LongAdder();
+    private final AtomicLong maxWriteNanos = new AtomicLong();
+
+    ReportWriter(int threads) {
+        io = Executors.newFixedThreadPool(Math.max(1, threads), task -> {
+            Thread thread = new Thread(task, "report-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    CompletableFuture<Path> submit(Path file, long version, String report) {
+        submitted.increment();
+        Slot slot = slots.computeIfAbsent(file, Slot::new);
+        Job job;
+        synchronized (slot) {
+            Job newest = slot.queued != null ? slot.queued : slot.writing;
+            if (version < Math.max(slot.version, slot.queued == null ? Long.MIN_VALUE : slot.queued.version)) {
+                // a newer report is queued, being written or written already
+                stale.increment();
+                return newest != null ? newest.done : CompletableFuture.completedFuture(file);
+            }
+            if (slot.queued != null) {
+                coalesced.increment();
+                slot.queued.version = version;
+                slot.queued.report = report;
+                return slot.queued.done;
+            }
+            job = new Job(version, report);
+            slot.queued = job;
+            queueDepth.increment();
+            if (slot.writing != null) {
+                // the running write requeues the slot when it finishes
+                return job.done;
+            }
+            slot.writing = job;
+        }
+        execute(slot);
+        return job.done;
+    }
+
+    private void execute(Slot slot) {
+        try {
+            io.execute(() -> write(slot));
+        } catch (RejectedExecutionException e) {
+            Job job;
+            synchronized (slot) {
+                job = slot.queued;
+                slot.queued = null;
+                slot.writing = null;
+            }
+            queueDepth.decrement();
+            job.done.completeExceptionally(new IOException("Report writer is closed", e));
+        }
+    }
+
+    private void write(Slot slot) {
+        Job job;
+        boolean sameVersion;
+        synchronized (slot) {
+            job = slot.queued;
+            slot.queued = null;
+            slot.writing = job;
+            sameVersion = job.version == slot.version;
+            slot.version = job.version;
+        }
+        queueDepth.decrement();
+        long start = System.nanoTime();
+        queueNanos.add(start - job.queuedAt);
+        ByteBuffer buffer = StandardCharsets.UTF_8.encode(job.report);
+        int size = buffer.remaining();
+        // hash and size are only used by the slot's writes, which run one after another
+        boolean same = sameVersion && job.report.hashCode() == slot.hash && size == slot.size;
+        slot.hash = job.report.hashCode();
+        slot.size = size;
+        if (same && holds(slot.file, size)) {
+            unchanged.increment();
+            job.done.complete(slot.file);
+        } else {
+            try (FileChannel channel = FileChannel.open(slot.file, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                slot.size = -1;
+                finish(slot);
+                job.done.completeExceptionally(e);
+                return;
+            }
+            long elapsed = System.nanoTime() - start;
+            written.increment();
+            bytesWritten.add(size);
+            writeNanos.add(elapsed);
+            maxWriteNanos.accumulateAndGet(elapsed, Math::max);
+        }
+        finish(slot);
+        job.done.complete(slot.file);
+    }
+
+    private static boolean holds(Path file, long size) {
+        try {
+            return Files.size(file) == size;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Ends the slot's write, starting the next one if a report was queued meanwhile.
+     */
+    private void finish(Slot slot) {
+        synchronized (slot) {
+            if (slot.queued == null) {
+                slot.writing = null;
+                return;
+            }
+            slot.writing = slot.queued;
+        }
+        execute(slot);
+    }
+
+    void close() {
+        io.shutdown();
+    }
+
+    int getQueueDepth() {
+        return queueDepth.intValue();
+    }
+
+    Map<String, Long> getStatistics() {
+        long count = written.sum();
+        return Map.of("submitted", submitted.sum(),
+                "coalesced", coalesced.sum(),
+                "stale", stale.sum(),
+                "unchanged", unchanged.sum(),
+                "written", count,
+                "bytesWritten", bytesWritten.sum(),
+                "queueDepth", queueDepth.sum(),
+                "averageQueueMicros", count == 0 ? 0 : queueNanos.sum() / count / 1000,
+                "averageWriteMicros", count == 0 ? 0 : writeNanos.sum() / count / 1000,
+                "maxWriteMicros", maxWriteNanos.get() / 1000);
+    }
+}
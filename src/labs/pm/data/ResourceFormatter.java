@@ -0,0 +1,161 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Text, product and review formats of one locale, with the message patterns compiled once. Immutable and
+ * shared by all threads; the format methods append to the caller's Appendable.
+ * <p>
+ * resources.properties holds the en-GB text. Each resources_xx.properties or resources_xx_YY.properties found
+ * next to it adds a locale, which is loaded on first use.
+ */
+class ResourceFormatter {
+
+    static final String DEFAULT_LANGUAGE_TAG = "en-GB";
+
+    private static final String RESOURCES = "resources";
+    private static final Map<String, ResourceFormatter> formatters = new ConcurrentHashMap<>();
+
+    private static class Supported {
+
+        private static final Set<String> languageTags = discover();
+    }
+
+    private final Properties resources;
+    private final MessagePattern productPattern;
+    private final MessagePattern reviewPattern;
+    private final DateTimeFormatter dateFormat;
+    private final MoneyFormat moneyFormat;
+
+    private ResourceFormatter(Locale locale, Properties resources) {
+        this.resources = resources;
+        productPattern = MessagePattern.compile(getText("product"));
+        reviewPattern = MessagePattern.compile(getText("review"));
+        dateFormat = DateTimeFormatter.ofLocalizedDate(FormatStyle.SHORT).localizedBy(locale);
+        moneyFormat = new MoneyFormat(locale);
+    }
+
+    static Set<String> getSupportedLocales() {
+        return Supported.languageTags;
+    }
+
+    /**
+     * The formatter of a supported language tag, or of en-GB for any other.
+     */
+    static ResourceFormatter of(String languageTag) {
+        if (!Supported.languageTags.contains(languageTag)) {
+            languageTag = DEFAULT_LANGUAGE_TAG;
+        }
+        return formatters.computeIfAbsent(languageTag, ResourceFormatter::load);
+    }
+
+    private static ResourceFormatter load(String languageTag) {
+        Locale locale = Locale.forLanguageTag(languageTag);
+        Properties resources = read(RESOURCES);
+        if (!languageTag.equals(DEFAULT_LANGUAGE_TAG)) {
+            // fall back from language and country to language only to the default text, like a resource bundle
+            if (!locale.getLanguage().isEmpty()) {
+                resources = read(RESOURCES + "_" + locale.getLanguage(), resources);
+            }
+            if (!locale.getCountry().isEmpty()) {
+                resources = read(RESOURCES + "_" + locale.getLanguage() + "_" + locale.getCountry(), resources);
+            }
+        }
+        return new ResourceFormatter(locale, resources);
+    }
+
+    private static Properties read(String name) {
+        Properties resources = read(name, null);
+        if (resources == null) {
+            throw new IllegalStateException("Missing " + name + ".properties");
+        }
+        return resources;
+    }
+
+    private static Properties read(String name, Properties defaults) {
+        try (InputStream in = ResourceFormatter.class.getResourceAsStream(name + ".properties")) {
+            if (in == null) {
+                return defaults;
+            }
+            Properties resources = new Properties(defaults);
+            resources.load(new InputStreamReader(in, StandardCharsets.UTF_8));
+            return resources;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Set<String> discover() {
+        Set<String> languageTags = new TreeSet<>();
+        languageTags.add(DEFAULT_LANGUAGE_TAG);
+        for (Locale locale : Locale.getAvailableLocales()) {
+            if (!locale.getLanguage().isEmpty() && locale.getVariant().isEmpty() && locale.getScript().isEmpty()
+                    && ResourceFormatter.class.getResource(RESOURCES + "_" + locale + ".properties") != null) {
+                languageTags.add(locale.toLanguageTag());
+            }
+        }
+        return Collections.unmodifiableSet(languageTags);
+    }
+
+    String getText(String key) {
+        String text = resources.getProperty(key);
+        if (text == null) {
+            throw new IllegalArgumentException("Missing resource " + key);
+        }
+        return text;
+    }
+
+    <A extends Appendable> A formatProduct(Product product, A out) throws IOException {
+        return productPattern.format(out, (index, to) -> {
+            switch (index) {
+                case 0:
+                    to.append(product.getName());
+                    break;
+                case 1:
+                    moneyFormat.format(product.getPrice(), to);
+                    break;
+                case 2:
+                    to.append(product.getRating().getStars());
+                    break;
+                case 3:
+                    dateFormat.formatTo(product.getBestBefore(), to);
+                    break;
+                default:
+                    to.append('{').append(String.valueOf(index)).append('}');
+            }
+        });
+    }
+
+    <A extends Appendable> A formatReview(Rating rating, String comments, A out) throws IOException {
+        return reviewPattern.format(out, (index, to) -> {
+            switch (index) {
+                case 0:
+                    to.append(rating.getStars());
+                    break;
+                case 1:
+                    to.append(comments);
+                    break;
+                default:
+                    to.append('{').append(String.valueOf(index)).append('}');
+            }
+        });
+    }
+
+    String formatMoney(BigDecimal amount) {
+        return moneyFormat.format(amount);
+    }
+}
@@ -4,6 +4,8 @@ import java.io.Serializable;
 
 public class Review implements Comparable<Review>, Serializable {
 
+    private static final long serialVersionUID = -7503703216195992225L;
+
     private Rating rating;
     private String comments;
 
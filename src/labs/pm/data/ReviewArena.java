@@ -0,0 +1,137 @@
+package labs.pm.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reviews of one product as a packed rating byte array and an array of comment codes from a
+ * {@link CommentDictionary}, kept in {@link Review} order (highest rating first, then by arrival).
+ * Immutable, with() copies the arrays, so an arena can be shared by every catalog version that has it.
+ * <p>
+ * With lazy review loading an arena may leave the first {@link #filed()} reviews in the product's reviews
+ * file and hold only the reviews added since; rating(), comment() and toReviews() see the reviews held.
+ */
+class ReviewArena {
+
+    static final ReviewArena EMPTY = new ReviewArena(0, new byte[0], new int[0]);
+
+    private static final Rating[] RATINGS = Rating.values();
+
+    private final int filed;
+    private final byte[] ratings;
+    private final int[] comments;
+
+    private ReviewArena(int filed, byte[] ratings, int[] comments) {
+        this.filed = filed;
+        this.ratings = ratings;
+        this.comments = comments;
+    }
+
+    /**
+     * An arena of the first count reviews of the product's reviews file, holding none of them.
+     */
+    static ReviewArena filed(int count) {
+        return count == 0 ? EMPTY : new ReviewArena(count, EMPTY.ratings, EMPTY.comments);
+    }
+
+    /**
+     * An arena of reviews already in Review order.
+     */
+    static ReviewArena of(List<Review> reviews, CommentDictionary dictionary) {
+        byte[] ratings = new byte[reviews.size()];
+        int[] comments = new int[reviews.size()];
+        for (int i = 0; i < ratings.length; i++) {
+            Review review = reviews.get(i);
+            ratings[i] = (byte) review.getRating().ordinal();
+            comments[i] = dictionary.encode(review.getComments());
+        }
+        return new ReviewArena(0, ratings, comments);
+    }
+
+    ReviewArena with(Rating rating, int comment) {
+        // insert after any review with the same or a higher rating, like a stable sort of the appended list
+        int low = 0;
+        int high = ratings.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ratings[middle] >= rating.ordinal()) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        byte[] ratings = new byte[this.ratings.length + 1];
+        int[] comments = new int[this.comments.length + 1];
+        System.arraycopy(this.ratings, 0, ratings, 0, low);
+        System.arraycopy(this.comments, 0, comments, 0, low);
+        ratings[low] = (byte) rating.ordinal();
+        comments[low] = comment;
+        System.arraycopy(this.ratings, low, ratings, low + 1, this.ratings.length - low);
+        System.arraycopy(this.comments, low, comments, low + 1, this.comments.length - low);
+        return new ReviewArena(filed, ratings, comments);
+    }
+
+    /**
+     * Adds reviews given in arrival order, each after the reviews with the same or a higher rating,
+     * in one pass however many there are.
+     */
+    ReviewArena with(Rating[] added, int[] addedComments) {
+        int[] next = new int[RATINGS.length];
+        for (byte rating : ratings) {
+            next[rating]++;
+        }
+        for (Rating rating : added) {
+            next[rating.ordinal()]++;
+        }
+        int size = 0;
+        for (int rating = RATINGS.length - 1; rating >= 0; rating--) {
+            int count = next[rating];
+            next[rating] = size;
+            size += count;
+        }
+        byte[] ratings = new byte[size];
+        int[] comments = new int[size];
+        for (int i = 0; i < this.ratings.length; i++) {
+            int at = next[this.ratings[i]]++;
+            ratings[at] = this.ratings[i];
+            comments[at] = this.comments[i];
+        }
+        for (int i = 0; i < added.length; i++) {
+            int at = next[added[i].ordinal()]++;
+            ratings[at] = (byte) added[i].ordinal();
+            comments[at] = addedComments[i];
+        }
+        return new ReviewArena(filed, ratings, comments);
+    }
+
+    int size() {
+        return filed + ratings.length;
+    }
+
+    int filed() {
+        return filed;
+    }
+
+    /**
+     * The reviews held in memory, which are all of them unless some are filed.
+     */
+    int held() {
+        return ratings.length;
+    }
+
+    Rating rating(int index) {
+        return RATINGS[ratings[index]];
+    }
+
+    int comment(int index) {
+        return comments[index];
+    }
+
+    List<Review> toReviews(CommentDictionary dictionary) {
+        List<Review> reviews = new ArrayList<>(ratings.length);
+        for (int i = 0; i < ratings.length; i++) {
+            reviews.add(new Review(rating(i), dictionary.decode(comments[i])));
+        }
+        return reviews;
+    }
+}
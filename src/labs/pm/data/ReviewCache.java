@@ -0,0 +1,129 @@
+package labs.pm.data;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of the reviews read from product reviews files with lazy review loading, keyed by product
+ * id and the number of reviews read, and bounded by their estimated heap size rather than their number.
+ * A file's first reviews only change when the file is replaced, so an entry is valid for any version that
+ * has the same number of reviews in the file.
+ */
+class ReviewCache {
+
+    // an ArrayList with its array, and per review the reference, the Review and its comments String
+    private static final int LIST_BYTES = 56;
+    private static final int REVIEW_BYTES = 4 + 24 + 24 + 16;
+
+    private static class Entry {
+
+        private final int count;
+        private final List<Review> reviews;
+        private final long bytes;
+
+        private Entry(int count, List<Review> reviews, long bytes) {
+            this.count = count;
+            this.reviews = reviews;
+            this.bytes = bytes;
+        }
+    }
+
+    private final long capacity;
+    private final Map<Integer, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    ReviewCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * The first count reviews of the product's file, or null if they are not cached.
+     */
+    List<Review> get(int id, int count) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(id);
+        }
+        if (entry != null && entry.count == count) {
+            hits.increment();
+            return entry.reviews;
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Caches an unmodifiable list, evicting the least recently used lists until the cache is within its
+     * capacity; a list larger than the whole cache is not kept.
+     */
+    void put(int id, int count, List<Review> reviews) {
+        long size = weigh(reviews);
+        if (size > capacity) {
+            return;
+        }
+        synchronized (entries) {
+            Entry previous = entries.put(id, new Entry(count, reviews, size));
+            bytes += size - (previous == null ? 0 : previous.bytes);
+            for (Iterator<Entry> i = entries.values().iterator(); bytes > capacity; ) {
+                bytes -= i.next().bytes;
+                i.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    private static long weigh(List<Review> reviews) {
+        long size = LIST_BYTES;
+        for (Review review : reviews) {
+            size += REVIEW_BYTES + review.getComments().length();
+        }
+        return size;
+    }
+
+    void invalidate(int id) {
+        synchronized (entries) {
+            Entry entry = entries.remove(id);
+            if (entry != null) {
+                bytes -= entry.bytes;
+            }
+        }
+    }
+
+    void clear() {
+        synchronized (entries) {
+            entries.clear();
+            bytes = 0;
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    long getBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    long getHits() {
+        return hits.sum();
+    }
+
+    long getMisses() {
+        return misses.sum();
+    }
+
+    long getEvictions() {
+        return evictions.sum();
+    }
+}
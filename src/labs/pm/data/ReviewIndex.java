@@ -0,0 +1,378 @@
+package labs.pm.data;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted index of review comments: for each term, the (product id, review ordinal) of every review whose
+ * comments contain it. Ordinals number a product's reviews in the order they were indexed.
+ * <p>
+ * A posting list is a sorted, varint delta-encoded byte array plus a short unsorted tail of recent postings,
+ * merged into the bytes once it outgrows an eighth of the list. Comments are tokenised once per
+ * {@link CommentDictionary} code. Replacing or removing a product's reviews only raises the product's ordinal
+ * floor; postings below it are skipped by searches and dropped by the next merge.
+ */
+class ReviewIndex {
+
+    private static final int MIN_TAIL = 16;
+    private static final int[] NO_TERMS = new int[0];
+
+    private static class Postings {
+
+        private byte[] bytes = new byte[0];
+        private int length;
+        private int count;
+        private long last;
+        private long[] tail = new long[4];
+        private int tailSize;
+
+        private void add(long key) {
+            if (tailSize == tail.length) {
+                tail = Arrays.copyOf(tail, tailSize * 2);
+            }
+            tail[tailSize++] = key;
+        }
+    }
+
+    /**
+     * Hits per product, filled in by search; a product may be reported more than once.
+     */
+    interface Hits {
+
+        void hit(int productId, int count);
+    }
+
+    private final CommentDictionary comments;
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private final List<Postings> postings = new ArrayList<>();
+    private int[][] commentTerms = new int[64][];
+    // per product: next ordinal, lowest live ordinal
+    private final IntMap<int[]> ordinals = new IntMap<>();
+    private long postingCount;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Lock readLock = lock.readLock();
+    private final Lock writeLock = lock.writeLock();
+
+    ReviewIndex(CommentDictionary comments) {
+        this.comments = comments;
+    }
+
+    /**
+     * Lower case terms of letters and digits, with accents removed.
+     */
+    static Set<String> terms(String text) {
+        Set<String> terms = new LinkedHashSet<>();
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder term = new StringBuilder();
+        for (int i = 0; i < normalized.length(); ) {
+            int c = normalized.codePointAt(i);
+            i += Character.charCount(c);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                term.appendCodePoint(c);
+            } else if (term.length() > 0) {
+                terms.add(term.toString().toLowerCase(Locale.ROOT));
+                term.setLength(0);
+            }
+        }
+        if (term.length() > 0) {
+            terms.add(term.toString().toLowerCase(Locale.ROOT));
+        }
+        return terms;
+    }
+
+    void add(int productId, int comment) {
+        try {
+            writeLock.lock();
+            int[] state = ordinals.get(productId);
+            if (state == null) {
+                state = new int[2];
+                ordinals.put(productId, state);
+            }
+            long key = key(productId, state[0]++);
+            for (int term : termsOf(comment)) {
+                Postings list = postings.get(term);
+                list.add(key);
+                postingCount++;
+                if (list.tailSize >= Math.max(MIN_TAIL, list.count >> 3)) {
+                    merge(list);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Drops every review indexed so far for the product.
+     */
+    void clear(int productId) {
+        try {
+            writeLock.lock();
+            int[] state = ordinals.get(productId);
+            if (state != null) {
+                state[1] = state[0];
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private int[] termsOf(int comment) {
+        if (comment >= commentTerms.length) {
+            commentTerms = Arrays.copyOf(commentTerms, Math.max(comment + 1, commentTerms.length + (commentTerms.length >> 1)));
+        }
+        int[] terms = commentTerms[comment];
+        if (terms == null) {
+            Set<String> words = terms(comments.decode(comment));
+            terms = words.isEmpty() ? NO_TERMS : new int[words.size()];
+            int i = 0;
+            for (String word : words) {
+                Integer term = termIds.get(word);
+                if (term == null) {
+                    term = postings.size();
+                    termIds.put(word, term);
+                    postings.add(new Postings());
+                }
+                terms[i++] = term;
+            }
+            commentTerms[comment] = terms;
+        }
+        return terms;
+    }
+
+    private void merge(Postings list) {
+        long[] tail = Arrays.copyOf(list.tail, list.tailSize);
+        Arrays.sort(tail);
+        list.tailSize = 0;
+        if (list.count == 0 || tail[0] > list.last) {
+            // appended in order, as when a product's reviews arrive one after another
+            for (long key : tail) {
+                append(list, key);
+            }
+            return;
+        }
+        long[] merged = new long[list.count + tail.length];
+        int size = 0;
+        int t = 0;
+        Decoder decoder = new Decoder(list);
+        while (decoder.hasNext()) {
+            long key = decoder.next();
+            while (t < tail.length && tail[t] < key) {
+                size = keep(merged, size, tail[t++]);
+            }
+            size = keep(merged, size, key);
+        }
+        while (t < tail.length) {
+            size = keep(merged, size, tail[t++]);
+        }
+        postingCount -= list.count + tail.length - size;
+        list.bytes = new byte[Math.max(16, size * 2)];
+        list.length = 0;
+        list.count = 0;
+        for (int i = 0; i < size; i++) {
+            append(list, merged[i]);
+        }
+        list.bytes = Arrays.copyOf(list.bytes, list.length);
+    }
+
+    private static long key(int productId, int ordinal) {
+        return (long) productId << 32 | ordinal;
+    }
+
+    private int keep(long[] keys, int size, long key) {
+        if (live(key)) {
+            keys[size++] = key;
+        }
+        return size;
+    }
+
+    private boolean live(long key) {
+        int[] state = ordinals.get((int) (key >>> 32));
+        return state != null && (int) key >= state[1];
+    }
+
+    private static void append(Postings list, long key) {
+        int product = (int) (key >>> 32);
+        int ordinal = (int) key;
+        if (list.count == 0) {
+            writeVarint(list, Integer.toUnsignedLong(product));
+            writeVarint(list, ordinal);
+        } else if (product == (int) (list.last >>> 32)) {
+            // the low bit tells a gap within one product, usually a single byte, from a step to the next product
+            writeVarint(list, (long) (ordinal - (int) list.last) << 1);
+        } else {
+            writeVarint(list, Integer.toUnsignedLong(product - (int) (list.last >>> 32)) << 1 | 1);
+            writeVarint(list, ordinal);
+        }
+        list.last = key;
+        list.count++;
+    }
+
+    private static void writeVarint(Postings list, long value) {
+        if (list.length + 5 > list.bytes.length) {
+            list.bytes = Arrays.copyOf(list.bytes, Math.max(16, list.bytes.length + (list.bytes.length >> 1)));
+        }
+        while ((value & ~0x7FL) != 0) {
+            list.bytes[list.length++] = (byte) (value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        list.bytes[list.length++] = (byte) value;
+    }
+
+    private static class Decoder {
+
+        private final Postings list;
+        private int position;
+        private int read;
+        private int product;
+        private int ordinal;
+
+        private Decoder(Postings list) {
+            this.list = list;
+        }
+
+        private boolean hasNext() {
+            return read < list.count;
+        }
+
+        private long next() {
+            if (read == 0) {
+                product = (int) readVarint();
+                ordinal = (int) readVarint();
+            } else {
+                long gap = readVarint();
+                if ((gap & 1) == 0) {
+                    ordinal += (int) (gap >>> 1);
+                } else {
+                    product += (int) (gap >>> 1);
+                    ordinal = (int) readVarint();
+                }
+            }
+            read++;
+            return key(product, ordinal);
+        }
+
+        private long readVarint() {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = list.bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reports one hit per review and term for every live review containing any of the query's terms.
+     */
+    void search(String query, Hits hits) {
+        try {
+            readLock.lock();
+            for (String term : terms(query)) {
+                Integer id = termIds.get(term);
+                if (id == null) {
+                    continue;
+                }
+                Postings list = postings.get(id);
+                Run run = new Run(hits);
+                Decoder decoder = new Decoder(list);
+                while (decoder.hasNext()) {
+                    run.add(decoder.next());
+                }
+                for (int i = 0; i < list.tailSize; i++) {
+                    run.add(list.tail[i]);
+                }
+                run.flush();
+            }
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Counts the live postings of consecutive keys of one product, so sorted postings look up each
+     * product's ordinals and report its hits once.
+     */
+    private class Run {
+
+        private final Hits hits;
+        private boolean started;
+        private int product;
+        private int[] state;
+        private int count;
+
+        private Run(Hits hits) {
+            this.hits = hits;
+        }
+
+        private void add(long key) {
+            int next = (int) (key >>> 32);
+            if (!started || next != product) {
+                flush();
+                started = true;
+                product = next;
+                state = ordinals.get(next);
+            }
+            if (state != null && (int) key >= state[1]) {
+                count++;
+            }
+        }
+
+        private void flush() {
+            if (count > 0) {
+                hits.hit(product, count);
+                count = 0;
+            }
+        }
+    }
+
+    int getTermCount() {
+        try {
+            readLock.lock();
+            return termIds.size();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    long getPostingCount() {
+        try {
+            readLock.lock();
+            return postingCount;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Bytes held by the posting lists, compressed and pending.
+     */
+    long getBytes() {
+        try {
+            readLock.lock();
+            long bytes = 0;
+            for (Postings list : postings) {
+                bytes += list.bytes.length + (long) list.tail.length * Long.BYTES;
+            }
+            return bytes;
+        } finally {
+            readLock.unlock();
+        }
+    }
+}
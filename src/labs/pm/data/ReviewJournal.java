@@ -0,0 +1,274 @@
+package labs.pm.data;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only log of catalog mutations. Records are buffered and written by a single flusher
+ * thread, which syncs each batch with one force() call (group commit). Each record is numbered,
+ * and the numbers keep growing across truncations, so a compaction checkpoint can tell the
+ * records already in the data files from later ones.
+ */
+class ReviewJournal implements Closeable {
+
+    enum Durability {
+        // callers wait until the batch holding their record is synced
+        SYNC,
+        // callers return at once, batches are synced every commit interval
+        ASYNC
+    }
+
+    private static final Logger logger = Logger.getLogger(ReviewJournal.class.getName());
+
+    private final Path file;
+    private final Durability durability;
+    private final long commitInterval;
+    private final FileChannel channel;
+    private final Thread flusher;
+
+    private final Object monitor = new Object();
+    private StringBuilder pending = new StringBuilder();
+    private List<CompletableFuture<Void>> waiting = new ArrayList<>();
+    private long appended;
+    private long written;
+    private boolean flushRequested;
+    private boolean closed;
+
+    ReviewJournal(Path file, Durability durability, long commitInterval) throws IOException {
+        this.file = file;
+        this.durability = durability;
+        this.commitInterval = commitInterval;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    Durability getDurability() {
+        return durability;
+    }
+
+    /**
+     * Feeds every complete record numbered after the checkpoint to the consumer and drops a torn record
+     * left by a crash mid-write. Records are numbered on from the last one in the file.
+     */
+    void replay(long checkpoint, Consumer<String> consumer) throws IOException {
+        flush();
+        synchronized (monitor) {
+            byte[] bytes = Files.readAllBytes(file);
+            long last = Math.max(appended, checkpoint);
+            int start = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] == '\n') {
+                    String line = new String(bytes, start, i - start, StandardCharsets.UTF_8);
+                    start = i + 1;
+                    int comma = line.indexOf(',');
+                    long sequence;
+                    try {
+                        sequence = Long.parseLong(line.substring(0, Math.max(comma, 0)));
+                    } catch (NumberFormatException e) {
+                        // unnumbered, written before records were numbered
+                        consumer.accept(unescape(line));
+                        continue;
+                    }
+                    last = Math.max(last, sequence);
+                    if (sequence > checkpoint) {
+                        consumer.accept(unescape(line.substring(comma + 1)));
+                    }
+                }
+            }
+            appended = last;
+            written = last;
+            if (start < bytes.length) {
+                logger.log(Level.WARNING, "Discarding incomplete journal record in " + file);
+            }
+            channel.truncate(start);
+            channel.position(start);
+        }
+    }
+
+    CompletableFuture<Void> append(String record) {
+        return append(List.of(record));
+    }
+
+    /**
+     * Appends the records to the same group commit, with one future for all of them.
+     */
+    CompletableFuture<Void> append(Collection<String> records) {
+        CompletableFuture<Void> commit = new CompletableFuture<>();
+        synchronized (monitor) {
+            if (closed) {
+                commit.completeExceptionally(new IOException("Journal " + file + " is closed"));
+                return commit;
+            }
+            for (String record : records) {
+                pending.append(++appended).append(',').append(escape(record)).append('\n');
+            }
+            waiting.add(commit);
+            monitor.notifyAll();
+        }
+        return durability == Durability.SYNC ? commit : CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * Blocks until everything appended so far has been written and synced.
+     */
+    void flush() {
+        synchronized (monitor) {
+            long target = appended;
+            if (written < target) {
+                flushRequested = true;
+                monitor.notifyAll();
+            }
+            while (written < target && flusher.isAlive()) {
+                try {
+                    monitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * The number of the last record appended.
+     */
+    long getSequence() {
+        synchronized (monitor) {
+            return appended;
+        }
+    }
+
+    /**
+     * Discards the journal contents once they have been compacted into the data files.
+     */
+    void truncate() throws IOException {
+        flush();
+        synchronized (channel) {
+            channel.truncate(0);
+            channel.force(true);
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            StringBuilder batch;
+            List<CompletableFuture<Void>> commits;
+            long batchEnd;
+            synchronized (monitor) {
+                try {
+                    while (pending.length() == 0 && !closed) {
+                        monitor.wait();
+                    }
+                    if (pending.length() == 0) {
+                        return;
+                    }
+                    // let concurrent writers join this group before syncing
+                    long deadline = System.nanoTime() + commitInterval * 1_000_000;
+                    long remaining;
+                    while (!closed && !flushRequested && (remaining = deadline - System.nanoTime()) > 0) {
+                        monitor.wait(Math.max(1, remaining / 1_000_000));
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+                batch = pending;
+                commits = waiting;
+                batchEnd = appended;
+                pending = new StringBuilder();
+                waiting = new ArrayList<>();
+                flushRequested = false;
+            }
+            IOException failure = null;
+            try {
+                ByteBuffer buffer = StandardCharsets.UTF_8.encode(batch.toString());
+                synchronized (channel) {
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                logger.log(Level.SEVERE, "Error writing journal " + e.getMessage(), e);
+                failure = e;
+            }
+            synchronized (monitor) {
+                written = batchEnd;
+                monitor.notifyAll();
+            }
+            for (CompletableFuture<Void> commit : commits) {
+                if (failure == null) {
+                    commit.complete(null);
+                } else {
+                    commit.completeExceptionally(failure);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (monitor) {
+            closed = true;
+            monitor.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private static String escape(String record) {
+        StringBuilder sb = new StringBuilder(record.length());
+        for (int i = 0; i < record.length(); i++) {
+            char c = record.charAt(i);
+            switch (c) {
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String unescape(String line) {
+        if (line.indexOf('\\') < 0) {
+            return line;
+        }
+        StringBuilder sb = new StringBuilder(line.length());
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                char next = line.charAt(++i);
+                sb.append(next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,188 @@
+package labs.pm.data;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned binary snapshot of the catalog.
+ * <pre>
+ * header:  int magic, short version, int product count
+ * product: int length, byte type, int id, string name, price, byte rating, [long best before],
+ *          int review count, { byte rating, string comments }*
+ * string:  int length, UTF-8 bytes
+ * price:   int scale, int length, unscaled two's-complement bytes
+ *          (version 1: short scale, byte length)
+ * </pre>
+ * Every product record is length-prefixed so a reader can skip what it doesn't understand.
+ */
+class SnapshotCodec {
+
+    static final int MAGIC = 0x4C504D53;
+    static final short VERSION = 2;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int WINDOW_SIZE = 1 << 30;
+    private static final byte FOOD = 'F';
+    private static final byte DRINK = 'D';
+    private static final Rating[] RATINGS = Rating.values();
+
+    private SnapshotCodec() {
+    }
+
+    static void write(Path file, Map<Product, List<Review>> products) throws IOException {
+        write(file, products.entrySet());
+    }
+
+    static void write(Path file, Collection<Map.Entry<Product, List<Review>>> products) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer out = ByteBuffer.allocateDirect(BUFFER_SIZE);
+            ByteBuffer record = ByteBuffer.allocate(4096);
+            out.putInt(MAGIC).putShort(VERSION).putInt(products.size());
+            for (Map.Entry<Product, List<Review>> entry : products) {
+                record = encode(record, entry.getKey(), entry.getValue());
+                if (out.remaining() < Integer.BYTES + record.remaining()) {
+                    drain(channel, out);
+                }
+                if (out.remaining() < Integer.BYTES + record.remaining()) {
+                    // record larger than the write buffer, write it straight through
+                    out.putInt(record.remaining());
+                    drain(channel, out);
+                    while (record.hasRemaining()) {
+                        channel.write(record);
+                    }
+                } else {
+                    out.putInt(record.remaining()).put(record);
+                }
+            }
+            drain(channel, out);
+            channel.force(true);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer out) throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    private static ByteBuffer encode(ByteBuffer record, Product product, List<Review> reviews) {
+        record.clear();
+        while (true) {
+            try {
+                record.put(product instanceof Food ? FOOD : DRINK);
+                record.putInt(product.getId());
+                putString(record, product.getName());
+                BigDecimal price = product.getPrice();
+                byte[] unscaled = price.unscaledValue().toByteArray();
+                record.putInt(price.scale()).putInt(unscaled.length).put(unscaled);
+                record.put((byte) product.getRating().ordinal());
+                if (product instanceof Food) {
+                    record.putLong(product.getBestBefore().toEpochDay());
+                }
+                record.putInt(reviews.size());
+                for (Review review : reviews) {
+                    record.put((byte) review.getRating().ordinal());
+                    putString(record, review.getComments());
+                }
+                return record.flip();
+            } catch (BufferOverflowException e) {
+                record = ByteBuffer.allocate(record.capacity() * 2);
+            }
+        }
+    }
+
+    private static void putString(ByteBuffer buffer, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    static boolean isSnapshot(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+            return channel.read(header, 0) == Integer.BYTES && header.flip().getInt() == MAGIC;
+        }
+    }
+
+    static Map<Product, List<Review>> read(Path file) throws IOException, ClassNotFoundException {
+        if (!isSnapshot(file)) {
+            return readSerialized(file);
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, WINDOW_SIZE));
+            in.getInt();
+            short version = in.getShort();
+            if (version > VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + " in " + file);
+            }
+            int count = in.getInt();
+            Map<Product, List<Review>> products = new HashMap<>(count * 4 / 3 + 1);
+            long windowStart = 0;
+            for (int i = 0; i < count; i++) {
+                if (in.remaining() < Integer.BYTES || in.remaining() < Integer.BYTES + in.getInt(in.position())) {
+                    // records never straddle a window, so remap from the next record
+                    windowStart += in.position();
+                    in = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(size - windowStart, WINDOW_SIZE));
+                }
+                int length = in.getInt();
+                int next = in.position() + length;
+                decode(in, version, products);
+                in.position(next);
+            }
+            return products;
+        }
+    }
+
+    private static void decode(ByteBuffer in, short version, Map<Product, List<Review>> products) {
+        byte type = in.get();
+        int id = in.getInt();
+        String name = getString(in);
+        int scale = version == 1 ? in.getShort() : in.getInt();
+        byte[] unscaled = new byte[version == 1 ? in.get() & 0xFF : in.getInt()];
+        in.get(unscaled);
+        BigDecimal price = new BigDecimal(new BigInteger(unscaled), scale);
+        Rating rating = RATINGS[in.get()];
+        Product product = type == FOOD
+                ? new Food(id, name, price, rating, LocalDate.ofEpochDay(in.getLong()))
+                : new Drink(id, name, price, rating);
+        int reviewCount = in.getInt();
+        List<Review> reviews = new ArrayList<>(reviewCount);
+        for (int i = 0; i < reviewCount; i++) {
+            Rating reviewRating = RATINGS[in.get()];
+            reviews.add(new Review(reviewRating, getString(in)));
+        }
+        products.put(product, reviews);
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<Product, List<Review>> readSerialized(Path file) throws IOException, ClassNotFoundException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             ObjectInputStream in = new ObjectInputStream(Channels.newInputStream(channel))) {
+            return (Map<Product, List<Review>>) in.readObject();
+        }
+    }
+}
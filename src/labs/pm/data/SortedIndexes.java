@@ -0,0 +1,237 @@
+package labs.pm.data;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.IntFunction;
+
+/**
+ * Product ids ordered by rating then price, by price, and by best before date (Food only), ties broken by id.
+ * Entries hold the sort keys and id only; query() looks the products up as it pages through them. A query
+ * ordered by rating with a price range reads each rating's price range from the rating and price index, so
+ * it costs O(log n + k) like a range on the ordering key.
+ */
+class SortedIndexes {
+
+    private static final int PRICE_SCALE = 4;
+
+    private static class Entry {
+
+        private final long key;
+        private final int id;
+
+        private Entry(long key, int id) {
+            this.key = key;
+            this.id = id;
+        }
+
+        BigDecimal price() {
+            return BigDecimal.valueOf(key, PRICE_SCALE);
+        }
+    }
+
+    /**
+     * A price with more than PRICE_SCALE decimals or outside the long range; key is its floor.
+     */
+    private static class ExactPriceEntry extends Entry {
+
+        private final BigDecimal price;
+
+        private ExactPriceEntry(long key, int id, BigDecimal price) {
+            super(key, id);
+            this.price = price;
+        }
+
+        @Override
+        BigDecimal price() {
+            return price;
+        }
+    }
+
+    /**
+     * An entry of the rating and price index, its key the rating. A probe without a price sorts before
+     * (id MIN_VALUE) or after (id MAX_VALUE) every price of its rating.
+     */
+    private static class RatedEntry extends Entry {
+
+        private final Entry price;
+
+        private RatedEntry(Rating rating, Entry price, int id) {
+            super(rating.ordinal(), id);
+            this.price = price;
+        }
+    }
+
+    private static final Comparator<Entry> BY_KEY =
+            Comparator.<Entry>comparingLong(e -> e.key).thenComparingInt(e -> e.id);
+    private static final Comparator<Entry> BY_PRICE = (e1, e2) -> {
+        int order = Long.compare(e1.key, e2.key);
+        if (order == 0 && (e1 instanceof ExactPriceEntry || e2 instanceof ExactPriceEntry)) {
+            order = e1.price().compareTo(e2.price());
+        }
+        return order != 0 ? order : Integer.compare(e1.id, e2.id);
+    };
+    private static final Comparator<Entry> BY_RATING_PRICE = (e1, e2) -> {
+        int order = Long.compare(e1.key, e2.key);
+        if (order != 0) {
+            return order;
+        }
+        Entry price1 = ((RatedEntry) e1).price;
+        Entry price2 = ((RatedEntry) e2).price;
+        if (price1 != null && price2 != null) {
+            return BY_PRICE.compare(price1, price2);
+        }
+        if (price1 == price2) {
+            return Integer.compare(e1.id, e2.id);
+        }
+        return price1 == null ? (e1.id == Integer.MIN_VALUE ? -1 : 1) : (e2.id == Integer.MIN_VALUE ? 1 : -1);
+    };
+
+    private final NavigableSet<Entry> byRating = new ConcurrentSkipListSet<>(BY_RATING_PRICE);
+    private final NavigableSet<Entry> byPrice = new ConcurrentSkipListSet<>(BY_PRICE);
+    private final NavigableSet<Entry> byBestBefore = new ConcurrentSkipListSet<>(BY_KEY);
+
+    void add(Product product) {
+        byRating.add(ratingKey(product.getRating(), product.getPrice(), product.getId()));
+        byPrice.add(priceKey(product.getPrice(), product.getId()));
+        if (product instanceof Food) {
+            byBestBefore.add(bestBeforeKey(product.getBestBefore(), product.getId()));
+        }
+    }
+
+    void remove(Product product) {
+        byRating.remove(ratingKey(product.getRating(), product.getPrice(), product.getId()));
+        byPrice.remove(priceKey(product.getPrice(), product.getId()));
+        if (product instanceof Food) {
+            byBestBefore.remove(bestBeforeKey(product.getBestBefore(), product.getId()));
+        }
+    }
+
+    void clear() {
+        byRating.clear();
+        byPrice.clear();
+        byBestBefore.clear();
+    }
+
+    List<Product> query(ProductQuery query, IntFunction<Product> products) {
+        List<Product> page = new ArrayList<>(Math.min(query.getLimit(), 1024));
+        int skip = query.getOffset();
+        for (NavigableSet<Entry> range : ranges(query)) {
+            Iterator<Entry> entries = query.isDescending() ? range.descendingIterator() : range.iterator();
+            while (entries.hasNext() && page.size() < query.getLimit()) {
+                Product product = products.apply(entries.next().id);
+                if (product != null && query.matches(product) && skip-- <= 0) {
+                    page.add(product);
+                }
+            }
+        }
+        return page;
+    }
+
+    private static Entry key(ProductQuery.Order order, Product product) {
+        switch (order) {
+            case PRICE:
+                return priceKey(product.getPrice(), product.getId());
+            case BEST_BEFORE:
+                return bestBeforeKey(product.getBestBefore(), product.getId());
+            default:
+                return ratingKey(product.getRating(), product.getPrice(), product.getId());
+        }
+    }
+
+    /**
+     * The index ranges holding the results, in result order.
+     */
+    private List<NavigableSet<Entry>> ranges(ProductQuery query) {
+        Entry after = query.getAfter() == null ? null : key(query.getOrder(), query.getAfter());
+        boolean descending = query.isDescending();
+        switch (query.getOrder()) {
+            case PRICE:
+                return List.of(bounded(byPrice,
+                        query.getMinPrice() == null ? null : priceKey(query.getMinPrice(), Integer.MIN_VALUE),
+                        query.getMaxPrice() == null ? null : priceKey(query.getMaxPrice(), Integer.MAX_VALUE),
+                        after, descending));
+            case BEST_BEFORE:
+                return List.of(bounded(byBestBefore,
+                        query.getMinBestBefore() == null ? null : bestBeforeKey(query.getMinBestBefore(), Integer.MIN_VALUE),
+                        query.getMaxBestBefore() == null ? null : bestBeforeKey(query.getMaxBestBefore(), Integer.MAX_VALUE),
+                        after, descending));
+            default:
+                Rating min = query.getMinRating() == null ? Rating.NOT_RATED : query.getMinRating();
+                Rating max = query.getMaxRating() == null ? Rating.FIVE_STAR : query.getMaxRating();
+                if (query.getMinPrice() == null && query.getMaxPrice() == null) {
+                    return List.of(bounded(byRating, ratingBound(min, null, Integer.MIN_VALUE),
+                            ratingBound(max, null, Integer.MAX_VALUE), after, descending));
+                }
+                // one price range per rating
+                List<NavigableSet<Entry>> ranges = new ArrayList<>();
+                for (int i = min.ordinal(); i <= max.ordinal(); i++) {
+                    Rating rating = Rating.values()[descending ? max.ordinal() - i + min.ordinal() : i];
+                    ranges.add(bounded(byRating, ratingBound(rating, query.getMinPrice(), Integer.MIN_VALUE),
+                            ratingBound(rating, query.getMaxPrice(), Integer.MAX_VALUE), after, descending));
+                }
+                return ranges;
+        }
+    }
+
+    /**
+     * The entries between the inclusive bounds, if any, and past the cursor in the query direction.
+     */
+    private static NavigableSet<Entry> bounded(NavigableSet<Entry> index, Entry from, Entry to, Entry after,
+                                               boolean descending) {
+        Comparator<? super Entry> order = index.comparator();
+        boolean fromInclusive = true;
+        boolean toInclusive = true;
+        if (after != null && !descending && (from == null || order.compare(after, from) >= 0)) {
+            from = after;
+            fromInclusive = false;
+        }
+        if (after != null && descending && (to == null || order.compare(after, to) <= 0)) {
+            to = after;
+            toInclusive = false;
+        }
+        if (from != null && to != null) {
+            return order.compare(from, to) > 0 ? Collections.emptyNavigableSet()
+                    : index.subSet(from, fromInclusive, to, toInclusive);
+        } else if (from != null) {
+            return index.tailSet(from, fromInclusive);
+        } else if (to != null) {
+            return index.headSet(to, toInclusive);
+        }
+        return index;
+    }
+
+    // with id MIN_VALUE or MAX_VALUE these are probe keys sorting before or after every product with the key
+
+    private static Entry ratingKey(Rating rating, BigDecimal price, int id) {
+        return new RatedEntry(rating, priceKey(price, id), id);
+    }
+
+    /**
+     * A probe key of the rating at the price, or before or after every price of the rating without one.
+     */
+    private static Entry ratingBound(Rating rating, BigDecimal price, int id) {
+        return new RatedEntry(rating, price == null ? null : priceKey(price, id), id);
+    }
+
+    private static Entry priceKey(BigDecimal price, int id) {
+        BigDecimal scaled = price.setScale(PRICE_SCALE, RoundingMode.FLOOR);
+        if (scaled.precision() - PRICE_SCALE > 14) {
+            // beyond the long range, order by sign and then by the price itself
+            return new ExactPriceEntry(price.signum() < 0 ? Long.MIN_VALUE : Long.MAX_VALUE, id, price);
+        }
+        long key = scaled.unscaledValue().longValue();
+        return scaled.compareTo(price) == 0 ? new Entry(key, id) : new ExactPriceEntry(key, id, price);
+    }
+
+    private static Entry bestBeforeKey(LocalDate bestBefore, int id) {
+        return new Entry(bestBefore.toEpochDay(), id);
+    }
+}
@@ -1,3 +1,5 @@
 module labs.pm {
     requires java.logging;
+    requires java.management;
+    exports labs.pm.data;
 }
\ No newline at end of file
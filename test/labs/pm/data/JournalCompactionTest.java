@@ -0,0 +1,137 @@
+package labs.pm.data;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class JournalCompactionTest {
+
+    private static final int PRODUCTS = 50;
+
+    private final Logger logger = Logger.getLogger(ProductManager.class.getName());
+    private final List<LogRecord> warnings = new CopyOnWriteArrayList<>();
+    private final Handler handler = new Handler() {
+        @Override
+        public void publish(LogRecord record) {
+            if (record.getLevel().intValue() >= Level.WARNING.intValue()) {
+                warnings.add(record);
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @TempDir
+    Path folder;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(folder.resolve("data"));
+        for (int id = 1; id <= PRODUCTS; id++) {
+            Files.writeString(folder.resolve("data/product" + id + ".csv"), "D," + id + ",Tea " + id + ",1.99,0,2030-01-01\n");
+            Files.writeString(folder.resolve("data/reviews" + id + ".csv"), "4,Nice hot cup of tea\n");
+        }
+        logger.addHandler(handler);
+    }
+
+    @AfterEach
+    void tearDown() {
+        logger.removeHandler(handler);
+    }
+
+    private ProductManager open() {
+        Map<String, String> settings = new HashMap<>();
+        settings.put("data.folder", folder.resolve("data").toString());
+        settings.put("reports.folder", folder.toString());
+        settings.put("temp.folder", folder.toString());
+        settings.put("journal.durability", "async");
+        settings.put("journal.compact.interval", "0");
+        settings.put("jmx.enabled", "false");
+        return ProductManager.newInstance(settings);
+    }
+
+    @Test
+    void concurrentCompactionsRunOneAtATime() throws Exception {
+        int threads = 4;
+        int rounds = 200;
+        ProductManager pm = open();
+        ExecutorService pool = Executors.newFixedThreadPool(threads * 2);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            tasks.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < rounds; i++) {
+                    pm.reviewProduct(1 + (thread * rounds + i) % PRODUCTS, Rating.TWO_STAR, "Rather weak tea");
+                }
+                return null;
+            }));
+            tasks.add(pool.submit(() -> {
+                start.await();
+                for (int i = 0; i < rounds; i++) {
+                    pm.compactJournal();
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        pool.shutdown();
+        pm.compactJournal();
+        pm.close();
+
+        assertEquals(List.of(), messages());
+        try (Stream<Path> files = Files.list(folder.resolve("data"))) {
+            assertEquals(List.of(), files.map(file -> file.getFileName().toString())
+                    .filter(name -> name.endsWith(".tmp"))
+                    .collect(Collectors.toList()));
+        }
+        assertEquals(List.of(String.valueOf(threads * rounds)),
+                Files.readAllLines(folder.resolve("data/journal.log.checkpoint")));
+
+        ProductManager reopened = open();
+        try {
+            assertEquals(List.of(), messages());
+            assertEquals(PRODUCTS + threads * rounds, reopened.snapshot().getTotalReviews());
+        } finally {
+            reopened.close();
+        }
+    }
+
+    private List<String> messages() {
+        List<String> messages = warnings.stream().map(LogRecord::getMessage).collect(Collectors.toList());
+        warnings.clear();
+        return messages;
+    }
+}
@@ -0,0 +1,44 @@
+package labs.pm.data;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LogLinearBucketsTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 5})
+    void bucketsBoundTheirValuesWithinTheResolution(int subBits) {
+        LogLinearBuckets buckets = new LogLinearBuckets(subBits);
+        SplittableRandom random = new SplittableRandom(subBits);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong(Long.MAX_VALUE) >>> random.nextInt(63);
+            int index = buckets.indexOf(value);
+            long upper = buckets.highestValueAt(index);
+            assertTrue(index < buckets.size());
+            assertTrue(upper >= value);
+            assertTrue(upper - value <= value >> subBits, () -> value + " in bucket up to " + upper);
+            assertTrue(index == 0 || buckets.highestValueAt(index - 1) < value);
+        }
+        assertEquals(buckets.size() - 1, buckets.indexOf(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, buckets.highestValueAt(buckets.size() - 1));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 5})
+    void percentilesAreCappedAtTheMax(int subBits) {
+        LogLinearBuckets buckets = new LogLinearBuckets(subBits);
+        long[] counts = new long[buckets.size()];
+        for (long value = 1; value <= 1000; value++) {
+            counts[buckets.indexOf(value)]++;
+        }
+        assertEquals(0, buckets.percentile(new long[buckets.size()], 0, 50, 0));
+        assertEquals(1000, buckets.percentile(counts, 1000, 100, 1000));
+        long median = buckets.percentile(counts, 1000, 50, 1000);
+        assertTrue(median >= 500 && median - 500 <= 500 >> subBits, () -> "median " + median);
+    }
+}